@@ -0,0 +1,216 @@
+package com.nextlabs.vfs;
+
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the blocking calls of a {@link RepositoryFileSystemManager} on an
+ * executor and hands back CompletableFutures, so callers can compose resolves,
+ * type checks, listings and reads instead of parking a thread of their own on
+ * each of them.
+ *
+ * By default the calls run on virtual threads when the JVM has them (JDK 21 and
+ * later), which lets thousands of SMB, Azure and SharePoint requests be in
+ * flight without as many OS threads. Older JVMs fall back to a pool of daemon
+ * threads created on demand. Any other Executor can be passed in instead.
+ *
+ * A future fails with the exception the underlying call threw, typically a
+ * FileSystemException, wrapped in a CompletionException when observed through
+ * join() or a dependent stage.
+ */
+public class AsyncFileSystemManager implements AutoCloseable {
+	private static final Logger log = LogManager.getLogger(AsyncFileSystemManager.class);
+
+	private static volatile ExecutorService sharedExecutor;
+
+	private final RepositoryFileSystemManager fsMgr;
+	private final Executor executor;
+	private final boolean ownsExecutor;
+
+	/**
+	 * Uses a new default executor, shut down by {@link #close()}.
+	 */
+	public AsyncFileSystemManager(RepositoryFileSystemManager fsMgr) {
+		this(fsMgr, newDefaultExecutor(), true);
+	}
+
+	/**
+	 * @param fsMgr    The manager the repositories are registered with.
+	 * @param executor Runs the blocking calls. Left running by {@link #close()}.
+	 */
+	public AsyncFileSystemManager(RepositoryFileSystemManager fsMgr, Executor executor) {
+		this(fsMgr, executor, false);
+	}
+
+	private AsyncFileSystemManager(RepositoryFileSystemManager fsMgr, Executor executor, boolean ownsExecutor) {
+		this.fsMgr = fsMgr;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * Creates the executor used when none is given: one virtual thread per task
+	 * on JDK 21 and later, otherwise a cached pool of daemon threads.
+	 */
+	public static ExecutorService newDefaultExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Before JDK 21, or with virtual threads still a preview feature
+			if (log.isDebugEnabled()) {
+				log.debug("Virtual threads not available, using a cached thread pool: " + e);
+			}
+		}
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "nextlabs-vfs-async-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Returns a default executor shared by the whole library, created on first
+	 * use and never shut down. Used by the providers for their background reads
+	 * and writes.
+	 */
+	public static ExecutorService getSharedExecutor() {
+		ExecutorService executor = sharedExecutor;
+		if (executor == null) {
+			synchronized (AsyncFileSystemManager.class) {
+				executor = sharedExecutor;
+				if (executor == null) {
+					executor = newDefaultExecutor();
+					sharedExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	public RepositoryFileSystemManager getFileSystemManager() {
+		return fsMgr;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @see RepositoryFileSystemManager#resolveFile(String)
+	 */
+	public CompletableFuture<FileObject> resolveAsync(final String uri) {
+		return supply(() -> fsMgr.resolveFile(uri));
+	}
+
+	/**
+	 * @see FileObject#getType()
+	 */
+	public CompletableFuture<FileType> getTypeAsync(final FileObject file) {
+		return supply(file::getType);
+	}
+
+	/**
+	 * Resolves a file and fetches its type in a single task.
+	 */
+	public CompletableFuture<FileType> getTypeAsync(final String uri) {
+		return supply(() -> {
+			FileObject file = fsMgr.resolveFile(uri);
+			if (file == null) {
+				throw new FileSystemException("vfs.provider/get-type.error", uri);
+			}
+			return file.getType();
+		});
+	}
+
+	/**
+	 * Lists the children of a folder through
+	 * {@link RepositoryFileSystemManager#iterateChildren(FileObject)}, completing
+	 * once the whole listing has been read.
+	 */
+	public CompletableFuture<List<FileObject>> listChildrenAsync(final FileObject folder) {
+		return supply(() -> {
+			List<FileObject> children = new ArrayList<FileObject>();
+			try (ChildIterator iterator = fsMgr.iterateChildren(folder)) {
+				while (iterator.hasNext()) {
+					children.add(iterator.next());
+				}
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			return children;
+		});
+	}
+
+	/**
+	 * Opens the content of a file for reading. The stream is read on the caller's
+	 * thread and must be closed by the caller.
+	 */
+	public CompletableFuture<InputStream> openAsync(final FileObject file) {
+		return supply(() -> file.getContent().getInputStream());
+	}
+
+	/**
+	 * Resolves a file and opens its content in a single task.
+	 */
+	public CompletableFuture<InputStream> openAsync(final String uri) {
+		return supply(() -> {
+			FileObject file = fsMgr.resolveFile(uri);
+			if (file == null) {
+				throw new FileSystemException("vfs.provider/read.error", uri);
+			}
+			return file.getContent().getInputStream();
+		});
+	}
+
+	/**
+	 * Runs any other call against the repositories on this manager's executor.
+	 */
+	public <T> CompletableFuture<T> supply(final Callable<T> call) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(call.call());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Shuts down the default executor, letting tasks already submitted finish. An
+	 * executor passed to the constructor is left alone.
+	 */
+	@Override
+	public void close() {
+		if (ownsExecutor) {
+			((ExecutorService) executor).shutdown();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.nextlabs.vfs;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.commons.vfs2.FileObject;
+
+/**
+ * Iterates over the children of a folder as the server returns them, one page
+ * at a time, instead of materializing the whole listing first.
+ * 
+ * Errors talking to the server while iterating are thrown as
+ * {@link java.io.UncheckedIOException}s wrapping a FileSystemException. The
+ * iterator holds on to a connection or listing handle until it is exhausted
+ * or closed, so always close it, e.g. with try-with-resources.
+ */
+public interface ChildIterator extends Iterator<FileObject>, AutoCloseable {
+
+	/**
+	 * Releases the listing. Safe to call more than once.
+	 */
+	@Override
+	void close();
+
+	/**
+	 * @return A sequential stream over the remaining children. Closing the stream
+	 *         closes the iterator.
+	 */
+	default Stream<FileObject> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL | Spliterator.DISTINCT), false).onClose(this::close);
+	}
+
+	/**
+	 * Wraps a listing that is already in memory.
+	 */
+	static ChildIterator of(final FileObject[] children) {
+		return new ChildIterator() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < children.length;
+			}
+
+			@Override
+			public FileObject next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return children[next++];
+			}
+
+			@Override
+			public void close() {
+				next = children.length;
+			}
+		};
+	}
+}
@@ -0,0 +1,75 @@
+package com.nextlabs.vfs;
+
+import org.apache.commons.vfs2.FileType;
+
+/**
+ * What a folder listing already told us about one of its children.
+ * 
+ * Providers hand this to the child FileObjects they create while listing, and
+ * the children answer getType(), getSize(), getLastModifiedTime() and their
+ * ETag attribute from it instead of asking the server again. The values are
+ * only trusted for a limited time after the listing, by default
+ * {@link #DEFAULT_VALIDITY} milliseconds, which is also how long jcifs trusts
+ * the attributes it caches, so a crawl that stats children right after listing
+ * them costs no extra round trips while a file looked at later is fetched as
+ * usual. Repositories whose children may wait longer to be looked at, such as
+ * busy crawls, can raise it through
+ * {@link com.nextlabs.vfs.cache.FilesCacheConfigBuilder#setListingValidity}.
+ * Values a listing does not carry are null and are fetched on demand.
+ */
+public final class ListingMetadata {
+
+	public static final long DEFAULT_VALIDITY = 5000L;
+
+	private final FileType type;
+	private final Long size;
+	private final Long lastModified;
+	private final String etag;
+	private final long validity;
+	private final long listedAt = System.currentTimeMillis();
+
+	public ListingMetadata(FileType type, Long size, Long lastModified, String etag) {
+		this(type, size, lastModified, etag, DEFAULT_VALIDITY);
+	}
+
+	/**
+	 * @param validity Milliseconds the values are trusted for after the listing.
+	 */
+	public ListingMetadata(FileType type, Long size, Long lastModified, String etag, long validity) {
+		this.type = type;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.etag = etag;
+		this.validity = validity;
+	}
+
+	/**
+	 * @return Whether the listing is recent enough for its values to be used.
+	 */
+	public boolean isFresh() {
+		return System.currentTimeMillis() - listedAt < validity;
+	}
+
+	public FileType getType() {
+		return type;
+	}
+
+	public Long getSize() {
+		return size;
+	}
+
+	public Long getLastModified() {
+		return lastModified;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	/**
+	 * @return The metadata if it is non null and fresh, otherwise null.
+	 */
+	public static ListingMetadata fresh(ListingMetadata metadata) {
+		return metadata != null && metadata.isFresh() ? metadata : null;
+	}
+}
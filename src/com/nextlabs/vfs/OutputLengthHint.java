@@ -0,0 +1,20 @@
+package com.nextlabs.vfs;
+
+/**
+ * Implemented by the FileObjects of providers that write better when told the
+ * final length of the content up front, for example by allocating the file in
+ * one go.
+ * 
+ * @see RepositoryFileSystemManager#getOutputStream(org.apache.commons.vfs2.FileObject, long)
+ */
+public interface OutputLengthHint {
+
+	/**
+	 * Sets the length the next output stream of this file is expected to write.
+	 * Applies to that stream only. Writing more or less than announced is not an
+	 * error, it only loses the benefit.
+	 * 
+	 * @param length The expected length in bytes.
+	 */
+	void setExpectedOutputLength(long length);
+}
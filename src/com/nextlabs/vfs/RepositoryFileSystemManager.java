@@ -6,27 +6,37 @@ import org.apache.commons.vfs2.provider.FileProvider;
 import org.apache.commons.vfs2.provider.LocalFileProvider;
 import org.apache.commons.vfs2.provider.http.HttpFileSystemConfigBuilder;
 
-import java.lang.reflect.Field;
-import java.util.HashMap;
+import java.io.OutputStream;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 import org.apache.commons.httpclient.Cookie;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.vfs2.CacheStrategy;
+import org.apache.commons.vfs2.FileNotFolderException;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemOptions;
 import org.apache.commons.vfs2.VFS;
 import org.apache.commons.vfs2.auth.StaticUserAuthenticator;
 import org.apache.commons.vfs2.cache.NullFilesCache;
 import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.util.FileObjectUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
 
 import com.nextlabs.vfs.authentication.SharepointOnline;
 import com.nextlabs.vfs.azure.blob.AzBlobProvider;
 import com.nextlabs.vfs.azure.file.AzFileProvider;
+import com.nextlabs.vfs.cache.FilesCacheConfigBuilder;
+import com.nextlabs.vfs.cache.RepositoryFilesCache;
 import com.nextlabs.vfs.constant.AuthType;
 import com.nextlabs.vfs.constant.RepositoryType;
+import com.nextlabs.vfs.dto.CacheSettings;
 import com.nextlabs.vfs.dto.Repository;
 import com.nextlabs.vfs.dto.RepositoryCredentials;
 import com.nextlabs.vfs.smb.SmbFileProvider;
@@ -59,28 +69,47 @@ import jcifs.context.SingletonContext;
  * - Theodore Lee
  * */
 public class RepositoryFileSystemManager extends DefaultFileSystemManager {
+	private static final Logger log = LogManager.getLogger(RepositoryFileSystemManager.class);
 
-	FileSystemOptions fso;
-	protected static Map<String, RepositoryCredentials> authStore;
-	
-	static Map<Triple<String, String, String>, FileSystemOptions> SPOCredentialCache;
-	static Map<FileSystemOptions, Long> SPOCredentialLastUpdate;
+	static final Map<Triple<String, String, String>, FileSystemOptions> SPOCredentialCache = new ConcurrentHashMap<Triple<String, String, String>, FileSystemOptions>();
+	static final Map<FileSystemOptions, Long> SPOCredentialLastUpdate = new ConcurrentHashMap<FileSystemOptions, Long>();
 	static final Long SPOCredsExpiryTime = 3600000L; //1 hour in milliseconds
 	
-	static Map<String, RepositoryType> repoTypeMapping;
+	// Maps repository paths to their type, credentials and cached FileSystemOptions.
+	// Shared by all manager instances and safe to read and update from any number of crawler threads.
+	static final RepositoryRouter router = new RepositoryRouter();
+	
+	// Providers registered under a RepositoryType name, captured as they are added so that dispatching a resolve
+	// is a plain table lookup instead of a reflective read of DefaultFileSystemManager.providers.
+	// These are the same instances the superclass keeps and initializes in init().
+	private final Map<RepositoryType, FileProvider> providerTable = new EnumMap<RepositoryType, FileProvider>(RepositoryType.class);
+	
+	// Repositories whose CacheSettings this manager has warned it cannot honour, so the warning is logged once each
+	private final Set<String> uncachedRepositories = ConcurrentHashMap.newKeySet();
 
 	public RepositoryFileSystemManager() throws FileSystemException {
+		this(null);
+	}
+	
+	/*
+	 * With cache settings, FileObjects are kept in a RepositoryFilesCache and are no longer refreshed on every call,
+	 * so re-reading the type, size, last-modified time or children of a file within the time to live costs no round
+	 * trip. Repositories registered with their own CacheSettings override these defaults.
+	 * Without cache settings (null) every call goes back to the server, as before, and the CacheSettings of
+	 * repositories are ignored with a warning.
+	 */
+	public RepositoryFileSystemManager(CacheSettings cacheSettings) throws FileSystemException {
 		super();
 		if ("true".equals(System.getProperty("enable_debugging"))) {
 			System.out.println("RepositoryFileSystemManager constructor begins");
 		}
-		this.setFilesCache(new NullFilesCache());
-		this.setCacheStrategy(CacheStrategy.ON_CALL);
-		SPOCredentialCache = new HashMap<Triple<String, String, String>, FileSystemOptions>();
-		SPOCredentialLastUpdate = new HashMap<FileSystemOptions, Long>();
-		authStore = new HashMap<String, RepositoryCredentials>();
-		repoTypeMapping = new HashMap<String, RepositoryType>();
-		fso = new FileSystemOptions();
+		if (cacheSettings == null) {
+			this.setFilesCache(new NullFilesCache());
+			this.setCacheStrategy(CacheStrategy.ON_CALL);
+		} else {
+			this.setFilesCache(new RepositoryFilesCache(cacheSettings));
+			this.setCacheStrategy(CacheStrategy.MANUAL);
+		}
 
 		this.addProvider(RepositoryType.SHARED_FOLDER.getName(), new SmbFileProvider());
 		this.addProvider(RepositoryType.SHAREPOINT.getName(), new WebdavFileProvider());
@@ -94,6 +123,17 @@ public class RepositoryFileSystemManager extends DefaultFileSystemManager {
 		}
 	}
 	
+	@Override
+	public void addProvider(final String[] urlSchemes, final FileProvider provider) throws FileSystemException {
+		super.addProvider(urlSchemes, provider);
+		for (String scheme : urlSchemes) {
+			RepositoryType type = RepositoryType.getTypeByNameString(scheme);
+			if (type != null) {
+				providerTable.put(type, provider);
+			}
+		}
+	}
+	
 	public void printSingletonContextProperties() {
 		SingletonContext ctx = SingletonContext.getInstance();
 		System.out.println("Checking Singleton Context properties...");
@@ -111,15 +151,11 @@ public class RepositoryFileSystemManager extends DefaultFileSystemManager {
 	}
 	
 	public static void addRepository(Repository repo) {
-		String encodedRepoPath = urlEncode(repo.getPath()).toLowerCase();
-		repoTypeMapping.put(encodedRepoPath, repo.getType());
-		authStore.put(encodedRepoPath, repo.getCreds());
+		router.put(repo.getPath(), repo.getType(), repo.getCreds(), repo.getCacheSettings());
 	}
 	
 	public static void setCredentials(String repoPath, RepositoryCredentials creds) throws IllegalArgumentException {
-		String uriEncoded = urlEncode(repoPath).toLowerCase();
-		if (repoTypeMapping.containsKey(uriEncoded)) authStore.put(uriEncoded, creds);
-		else throw new IllegalArgumentException("Cannot set credentials on repository that does not exist");
+		if (router.setCredentials(repoPath, creds) == null) throw new IllegalArgumentException("Cannot set credentials on repository that does not exist");
 	}
 	
 	public static void setAllCredentials(Map<String, RepositoryCredentials> credsMap) throws IllegalArgumentException {
@@ -133,27 +169,124 @@ public class RepositoryFileSystemManager extends DefaultFileSystemManager {
 	}
 	
 	public static RepositoryCredentials getCredentials(String uri) {
-		String uriEncoded = urlEncode(uri).toLowerCase();
-		return authStore.get(getRepoPath(uriEncoded));
+		RepositoryRouter.Route route = router.find(uri);
+		return route == null ? null : route.getCredentials();
 	}
 	
-	private static String getRepoPath(String fileUri) {
-		String uriEncoded = urlEncode(fileUri).toLowerCase();
-		return authStore.keySet().stream().filter(path -> uriEncoded.startsWith(path)).findAny().orElse(null);
+	/*
+	 * Returns the normalized path of the repository the URI belongs to, or null if it is not in any repository.
+	 */
+	public static String getRepositoryPath(String uri) {
+		RepositoryRouter.Route route = router.find(uri);
+		return route == null ? null : route.getPath();
 	}
 	
 	private static RepositoryType getRepoType(String fileUri) {
-		return repoTypeMapping.get(getRepoPath(fileUri));
+		RepositoryRouter.Route route = router.find(fileUri);
+		return route == null ? null : route.getType();
 	}
 
 	@Override
 	public FileObject resolveFile(String uri) throws FileSystemException {
-		RepositoryCredentials sa = getCredentials(uri);
+		RepositoryRouter.Route route = router.find(uri);
 		if ("true".equals(System.getProperty("enable_debugging"))) {
-			System.out.println("RepositoryCredentials" + "=" + sa.toString());
+			System.out.println("RepositoryCredentials" + "=" + (route == null ? null : route.getCredentials()));
+		}
+		return resolveFile(getBaseFile(), uri, getRepositoryOptions(route), route == null ? null : route.getType());
+	}
+	
+	/*
+	 * Returns the FileSystemOptions of a registered repository, building them only once per set of credentials.
+	 * 
+	 * Commons VFS looks up its file systems by root name and options, so handing back the same options instance
+	 * on every resolve keeps a repository on one warm file system (CIFSContext, HttpClient, Sharepoint Online login)
+	 * and lets FileSystemOptions.compareTo short-circuit on identity instead of rebuilding its option maps.
+	 * Re-adding a repository or replacing its credentials registers a new route, which drops the cached options.
+	 * 
+	 * Every call works on its own options object, so threads resolving files in different repositories can never
+	 * see each other's credentials.
+	 * 
+	 * CacheSettings of a repository only take effect on a manager created with cache settings of its own; any other
+	 * manager has no RepositoryFilesCache to apply them to, and says so once per repository.
+	 */
+	protected FileSystemOptions getRepositoryOptions(RepositoryRouter.Route route) throws FileSystemException {
+		if (route == null) {
+			return new FileSystemOptions();
+		}
+		if (route.getCacheSettings() != null && !(getFilesCache() instanceof RepositoryFilesCache) && uncachedRepositories.add(route.getPath())) {
+			log.warn("Ignoring the cache settings of repository " + route.getPath()
+					+ ": this RepositoryFileSystemManager was created without cache settings, so it caches nothing");
 		}
-		setupRepositoryAuthentication(sa);
-		return resolveFile(uri, fso);
+		FileSystemOptions options = route.getOptions();
+		if (options == null) {
+			synchronized (route) {
+				options = route.getOptions();
+				if (options == null) {
+					options = new FileSystemOptions();
+					setupRepositoryAuthentication(options, route.getCredentials());
+					if (route.getCacheSettings() != null) {
+						FilesCacheConfigBuilder.getInstance().setCacheSettings(options, route.getCacheSettings());
+					}
+					route.setOptions(options);
+				}
+			}
+		}
+		return options;
+	}
+	
+	/*
+	 * Returns the hit/miss counters of the file system serving the given file or repository URI, or null if caching
+	 * is not enabled on this manager or nothing has been cached for it yet.
+	 */
+	public RepositoryFilesCache.Statistics getCacheStatistics(String uri) throws FileSystemException {
+		if (!(getFilesCache() instanceof RepositoryFilesCache)) {
+			return null;
+		}
+		FileObject file = resolveFile(uri);
+		return file == null ? null : ((RepositoryFilesCache) getFilesCache()).getStatistics(file.getFileSystem());
+	}
+	
+	/*
+	 * Returns the counters summed over every repository, or null if caching is not enabled on this manager.
+	 */
+	public RepositoryFilesCache.Statistics getCacheStatistics() {
+		return getFilesCache() instanceof RepositoryFilesCache ? ((RepositoryFilesCache) getFilesCache()).getStatistics() : null;
+	}
+	
+	/*
+	 * Lists the children of a folder page by page when its provider supports it (see StreamingListing), and falls
+	 * back to getChildren() otherwise. Unlike getChildren(), the listing is not kept on the FileObject.
+	 * The returned iterator must be closed.
+	 */
+	public ChildIterator iterateChildren(FileObject folder) throws FileSystemException {
+		// Goes through the decorated object first so that the ON_CALL strategy refreshes the folder as usual
+		if (!folder.getType().hasChildren()) {
+			throw new FileNotFolderException(folder.getName());
+		}
+		FileObject file = FileObjectUtils.getAbstractFileObject(folder);
+		if (file instanceof StreamingListing) {
+			return ((StreamingListing) file).iterateChildren();
+		}
+		return ChildIterator.of(folder.getChildren());
+	}
+	
+	/*
+	 * Stream form of iterateChildren(FileObject). Close the stream to release the listing.
+	 */
+	public Stream<FileObject> streamChildren(FileObject folder) throws FileSystemException {
+		return iterateChildren(folder).stream();
+	}
+	
+	/*
+	 * Opens the content of a file for writing when its final length is known, letting providers that support it
+	 * (see OutputLengthHint) size the file before the first write. Otherwise the same as getContent().getOutputStream().
+	 */
+	public OutputStream getOutputStream(FileObject file, long length) throws FileSystemException {
+		FileObject target = FileObjectUtils.getAbstractFileObject(file);
+		if (target instanceof OutputLengthHint) {
+			((OutputLengthHint) target).setExpectedOutputLength(length);
+		}
+		return file.getContent().getOutputStream();
 	}
 	
 	public FileObject resolveFile(String uri, RepositoryCredentials rc, RepositoryType type) throws FileSystemException {
@@ -164,8 +297,7 @@ public class RepositoryFileSystemManager extends DefaultFileSystemManager {
 		if ("true".equals(System.getProperty("enable_debugging"))) {
 			System.out.println("uriEncoded" + "=" + uriEncoded);
 		}
-		repoTypeMapping.put(uriEncoded, type);
-		setCredentials(uriEncoded, rc);
+		router.put(uriEncoded, type, rc);
 		return resolveFile(uri);
 	}
 
@@ -180,8 +312,11 @@ public class RepositoryFileSystemManager extends DefaultFileSystemManager {
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
 	public FileObject resolveFile(final FileObject baseFile, final String uri, final FileSystemOptions fileSystemOptions) throws FileSystemException {
+		return resolveFile(baseFile, uri, fileSystemOptions, getRepoType(uri));
+	}
+
+	private FileObject resolveFile(final FileObject baseFile, final String uri, final FileSystemOptions fileSystemOptions, final RepositoryType repoType) throws FileSystemException {
 		FileObject foundFile = null;
 		try {
 			if ("true".equals(System.getProperty("enable_debugging"))) {
@@ -211,28 +346,12 @@ public class RepositoryFileSystemManager extends DefaultFileSystemManager {
 				throw new IllegalArgumentException();
 			}
 	
-			Map<String, FileProvider> providers = null;
-			// All this nonsense just because "providers" is a private field in the superclass
-			
-			// The reason why I have to use providers from the superclass and not just create
-			// a local mapping for repository types to providers is because Apache VFS
-			// has some internal logic for initializing each file system and does it on each
-			// file system when fsMgr.init() is called
-			
-			// It's simply easier to reuse the providers field in the superclass than to try to
-			// reroute the initialization logic into the subclass
-			try {
-				Class<?> c = DefaultFileSystemManager.class;
-				Field field = c.getDeclaredField("providers");
-				field.setAccessible(true);
-				providers = (Map<String, FileProvider>) field.get(this);
-			} catch (Throwable t) {
-				t.printStackTrace();
-			}
-			
-			FileProvider provider = providers.get(getRepoType(uri).getName());
+			FileProvider provider = repoType == null ? null : providerTable.get(repoType);
 			if ("true".equals(System.getProperty("enable_debugging"))) {
-				System.out.println("getRepoType(uri).getName" + " = " + getRepoType(uri).getName());
+				System.out.println("getRepoType(uri).getName" + " = " + (repoType == null ? null : repoType.getName()));
+			}
+			if (provider == null) {
+				throw new FileSystemException("vfs.impl/unknown-scheme.error", repoType, uri);
 			}
 			foundFile = provider.findFile(realBaseFile, uri, fileSystemOptions);
 			if ("true".equals(System.getProperty("enable_debugging"))) {
@@ -248,47 +367,42 @@ public class RepositoryFileSystemManager extends DefaultFileSystemManager {
 		return foundFile;
 	}
 
-	protected void setSharepointOnlineCredentials(String domain, String username, String password) throws FileSystemException {
-		fso = new FileSystemOptions();
+	protected void setSharepointOnlineCredentials(FileSystemOptions opts, String domain, String username, String password) throws FileSystemException {
 		WebdavFileSystemConfigBuilder builder = WebdavFileSystemConfigBuilder.getInstance();
-		builder.setCredentials(fso, domain, username, password);
-		builder.setAuthType(fso, AuthType.SHAREPOINT_ONLINE.getName());
+		builder.setCredentials(opts, domain, username, password);
+		builder.setAuthType(opts, AuthType.SHAREPOINT_ONLINE.getName());
 	}
 	
-	protected void setCifsCredentials(String domain, String username, String password) throws FileSystemException {
-		fso = new FileSystemOptions();
+	protected void setCifsCredentials(FileSystemOptions opts, String domain, String username, String password) throws FileSystemException {
 		StaticUserAuthenticator auth = new StaticUserAuthenticator(domain, username, password);
-		DefaultFileSystemConfigBuilder.getInstance().setUserAuthenticator(fso, auth);
+		DefaultFileSystemConfigBuilder.getInstance().setUserAuthenticator(opts, auth);
 	}
 
-	protected void setWindowsCredentials(String domain, String username, String password) throws FileSystemException {
-		fso = new FileSystemOptions();
+	protected void setWindowsCredentials(FileSystemOptions opts, String domain, String username, String password) throws FileSystemException {
 		WebdavFileSystemConfigBuilder builder = WebdavFileSystemConfigBuilder.getInstance();
-		builder.setCredentials(fso, domain, username, password);
-		builder.setAuthType(fso, AuthType.HTTP_NTLM.getName());
+		builder.setCredentials(opts, domain, username, password);
+		builder.setAuthType(opts, AuthType.HTTP_NTLM.getName());
 	}
 
-	protected void setBasicAuthCredentials(String username, String password) throws FileSystemException {
-		fso = new FileSystemOptions();
+	protected void setBasicAuthCredentials(FileSystemOptions opts, String username, String password) throws FileSystemException {
 		StaticUserAuthenticator auth = new StaticUserAuthenticator("", username, password);
-		DefaultFileSystemConfigBuilder.getInstance().setUserAuthenticator(fso, auth);
-		HttpFileSystemConfigBuilder.getInstance().setPreemptiveAuth(fso, true);
-		HttpFileSystemConfigBuilder.getInstance().setProxyAuthenticator(fso, auth);
+		DefaultFileSystemConfigBuilder.getInstance().setUserAuthenticator(opts, auth);
+		HttpFileSystemConfigBuilder.getInstance().setPreemptiveAuth(opts, true);
+		HttpFileSystemConfigBuilder.getInstance().setProxyAuthenticator(opts, auth);
 	}
 	
-	protected void setAzureCredentials(String accName, String accKey) throws FileSystemException {
-		fso = new FileSystemOptions();
+	protected void setAzureCredentials(FileSystemOptions opts, String accName, String accKey) throws FileSystemException {
 		StaticUserAuthenticator auth = new StaticUserAuthenticator("", accName, accKey);
-		DefaultFileSystemConfigBuilder.getInstance().setUserAuthenticator(fso, auth); 
+		DefaultFileSystemConfigBuilder.getInstance().setUserAuthenticator(opts, auth); 
 	}
 
-	protected void setupRepositoryAuthentication(RepositoryCredentials sa) throws FileSystemException {
+	protected void setupRepositoryAuthentication(FileSystemOptions opts, RepositoryCredentials sa) throws FileSystemException {
 		if (sa != null) {
-			if (sa.getType() == AuthType.SHAREPOINT_ONLINE) setSharepointOnlineCredentials(sa.getDomain(), sa.getUserName(), sa.getPassword());
-			else if (sa.getType() == AuthType.HTTP_BASIC) setBasicAuthCredentials(sa.getUserName(), sa.getPassword());
-			else if (sa.getType() == AuthType.HTTP_NTLM) setWindowsCredentials(sa.getDomain(), sa.getUserName(), sa.getPassword());
-			else if (sa.getType() == AuthType.CIFS) setCifsCredentials(sa.getDomain(), sa.getUserName(), sa.getPassword());
-			else if (sa.getType() == AuthType.AZURE) setAzureCredentials(sa.getUserName(), sa.getPassword());
+			if (sa.getType() == AuthType.SHAREPOINT_ONLINE) setSharepointOnlineCredentials(opts, sa.getDomain(), sa.getUserName(), sa.getPassword());
+			else if (sa.getType() == AuthType.HTTP_BASIC) setBasicAuthCredentials(opts, sa.getUserName(), sa.getPassword());
+			else if (sa.getType() == AuthType.HTTP_NTLM) setWindowsCredentials(opts, sa.getDomain(), sa.getUserName(), sa.getPassword());
+			else if (sa.getType() == AuthType.CIFS) setCifsCredentials(opts, sa.getDomain(), sa.getUserName(), sa.getPassword());
+			else if (sa.getType() == AuthType.AZURE) setAzureCredentials(opts, sa.getUserName(), sa.getPassword());
 		}
 	}
 	
@@ -0,0 +1,182 @@
+package com.nextlabs.vfs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.vfs2.FileSystemOptions;
+
+import com.nextlabs.vfs.constant.RepositoryType;
+import com.nextlabs.vfs.dto.CacheSettings;
+import com.nextlabs.vfs.dto.RepositoryCredentials;
+
+/*
+ * Routes file URIs to the repository they belong to.
+ *
+ * Repository paths are normalized the same way RepositoryFileSystemManager always has (urlEncode + lower case)
+ * and split into their '/' separated segments, which are stored in a radix trie. A lookup walks the segments of
+ * the file URI once and returns the deepest registered repository, so the cost depends on the depth of the path
+ * rather than on the number of repositories, and nested repositories (e.g. a library inside a site) always resolve
+ * to the innermost one. Matching on whole segments also stops "//server/share/docs2" from matching "//server/share/docs".
+ *
+ * Readers never lock: the trie is immutable and every update copies the nodes along the updated path before
+ * publishing a new root.
+ */
+class RepositoryRouter {
+
+	/*
+	 * Everything needed to open a file in a repository, returned by a single lookup.
+	 */
+	static class Route {
+		private final String path;
+		private final RepositoryType type;
+		private final RepositoryCredentials credentials;
+		private final CacheSettings cacheSettings;
+		// Built lazily from the credentials, see RepositoryFileSystemManager.getRepositoryOptions
+		private volatile FileSystemOptions options;
+
+		Route(String path, RepositoryType type, RepositoryCredentials credentials, CacheSettings cacheSettings) {
+			this.path = path;
+			this.type = type;
+			this.credentials = credentials;
+			this.cacheSettings = cacheSettings;
+		}
+
+		String getPath() {
+			return path;
+		}
+
+		RepositoryType getType() {
+			return type;
+		}
+
+		RepositoryCredentials getCredentials() {
+			return credentials;
+		}
+
+		CacheSettings getCacheSettings() {
+			return cacheSettings;
+		}
+
+		FileSystemOptions getOptions() {
+			return options;
+		}
+
+		void setOptions(FileSystemOptions options) {
+			this.options = options;
+		}
+	}
+
+	private static class Node {
+		static final Node EMPTY = new Node(Collections.<String, Node>emptyMap(), null);
+
+		final Map<String, Node> children;
+		final Route route;
+
+		Node(Map<String, Node> children, Route route) {
+			this.children = children;
+			this.route = route;
+		}
+
+		Node withChild(String segment, Node child) {
+			Map<String, Node> copy = new HashMap<String, Node>(children);
+			copy.put(segment, child);
+			return new Node(Collections.unmodifiableMap(copy), route);
+		}
+
+		Node withRoute(Route route) {
+			return new Node(children, route);
+		}
+	}
+
+	private volatile Node root = Node.EMPTY;
+
+	/*
+	 * Returns the route of the deepest repository containing the URI, or null if there is none.
+	 */
+	Route find(String uri) {
+		List<String> segments = segments(uri);
+		if (segments == null) return null;
+		Node node = root;
+		Route found = node.route;
+		for (String segment : segments) {
+			node = node.children.get(segment);
+			if (node == null) break;
+			if (node.route != null) found = node.route;
+		}
+		return found;
+	}
+
+	/*
+	 * Returns the route registered for exactly this repository path, or null.
+	 */
+	Route get(String repoPath) {
+		List<String> segments = segments(repoPath);
+		if (segments == null) return null;
+		Node node = root;
+		for (String segment : segments) {
+			node = node.children.get(segment);
+			if (node == null) return null;
+		}
+		return node.route;
+	}
+
+	/*
+	 * Registers a repository, replacing any existing registration for the same path. An identical registration is
+	 * kept as is so that the options already built for it stay cached. The cache settings of an existing
+	 * registration are carried over.
+	 */
+	synchronized Route put(String repoPath, RepositoryType type, RepositoryCredentials credentials) {
+		Route existing = get(repoPath);
+		return put(repoPath, type, credentials, existing == null ? null : existing.getCacheSettings());
+	}
+
+	synchronized Route put(String repoPath, RepositoryType type, RepositoryCredentials credentials, CacheSettings cacheSettings) {
+		Route existing = get(repoPath);
+		if (existing != null && existing.getType() == type && existing.getCredentials() == credentials && existing.getCacheSettings() == cacheSettings) {
+			return existing;
+		}
+		Route route = new Route(normalize(repoPath), type, credentials, cacheSettings);
+		root = insert(root, segments(repoPath), 0, route);
+		return route;
+	}
+
+	/*
+	 * Replaces the credentials of a registered repository. Returns null if the repository does not exist.
+	 */
+	synchronized Route setCredentials(String repoPath, RepositoryCredentials credentials) {
+		Route existing = get(repoPath);
+		if (existing == null) return null;
+		return put(repoPath, existing.getType(), credentials, existing.getCacheSettings());
+	}
+
+	private static Node insert(Node node, List<String> segments, int index, Route route) {
+		if (index == segments.size()) {
+			return node.withRoute(route);
+		}
+		String segment = segments.get(index);
+		Node child = node.children.get(segment);
+		return node.withChild(segment, insert(child == null ? Node.EMPTY : child, segments, index + 1, route));
+	}
+
+	static String normalize(String path) {
+		String encoded = RepositoryFileSystemManager.urlEncode(path);
+		return encoded == null ? null : encoded.toLowerCase();
+	}
+
+	static List<String> segments(String path) {
+		String normalized = normalize(path);
+		if (normalized == null) return null;
+		List<String> segments = new ArrayList<String>();
+		int start = 0;
+		for (int i = 0; i <= normalized.length(); i++) {
+			if (i == normalized.length() || normalized.charAt(i) == '/') {
+				if (i > start) segments.add(normalized.substring(start, i));
+				start = i + 1;
+			}
+		}
+		return segments;
+	}
+}
@@ -0,0 +1,21 @@
+package com.nextlabs.vfs;
+
+import org.apache.commons.vfs2.FileSystemException;
+
+/**
+ * Implemented by the FileObjects of providers that can list a folder lazily.
+ * 
+ * @see RepositoryFileSystemManager#iterateChildren(org.apache.commons.vfs2.FileObject)
+ */
+public interface StreamingListing {
+
+	/**
+	 * Starts listing the children of this folder. Unlike getChildren(), the
+	 * result is not cached on the FileObject.
+	 * 
+	 * @return An iterator over the children, which must be closed.
+	 * @throws FileSystemException If this is not a folder or the listing cannot
+	 *                             be started.
+	 */
+	ChildIterator iterateChildren() throws FileSystemException;
+}
@@ -32,4 +32,24 @@ public class AzConstants {
 	 * Azure File Storage API
 	 */
 	public static final String AZSFSCHEME = "azsf";
+
+	/**
+	 * Items requested per segment when listing a folder. 5000 is the most either
+	 * service returns in one response.
+	 */
+	public static final int LISTING_PAGE_SIZE = 5000;
+
+	/**
+	 * Least and most single-put threshold the Blob Storage SDK accepts. 256 MiB
+	 * is also the most a single Put Blob request takes.
+	 */
+	public static final int MIN_SINGLE_BLOB_PUT_THRESHOLD = 1024 * 1024;
+	public static final int MAX_SINGLE_BLOB_PUT_THRESHOLD = 256 * 1024 * 1024;
+
+	/**
+	 * Least and most stream write size, i.e. block size, the Blob Storage SDK
+	 * accepts.
+	 */
+	public static final int MIN_UPLOAD_BLOCK_SIZE = 16 * 1024;
+	public static final int MAX_UPLOAD_BLOCK_SIZE = 100 * 1024 * 1024;
 }
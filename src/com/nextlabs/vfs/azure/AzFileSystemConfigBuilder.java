@@ -70,4 +70,253 @@ public class AzFileSystemConfigBuilder extends FileSystemConfigBuilder {
 	public UserAuthenticator getUserAuthenticator(FileSystemOptions opts) {
 		return (UserAuthenticator) getParam(opts, "userAuthenticator");
 	}
+
+	/**
+	 * Sets how many items are requested per page when listing a folder, on both
+	 * Blob and File storage. Defaults to {@link AzConstants#LISTING_PAGE_SIZE},
+	 * the most either service returns in one response; smaller pages reach the
+	 * first children sooner and hold less in memory.
+	 * 
+	 * @param opts     The FileSystemOptions.
+	 * @param pageSize The page size, between 1 and 5000.
+	 */
+	public void setListingPageSize(FileSystemOptions opts, int pageSize) {
+		setParam(opts, "listingPageSize", Integer.valueOf(pageSize));
+	}
+
+	/**
+	 * @see #setListingPageSize
+	 * @param opts The FileSystemOptions.
+	 * @return The page size.
+	 */
+	public int getListingPageSize(FileSystemOptions opts) {
+		return getInteger(opts, "listingPageSize", AzConstants.LISTING_PAGE_SIZE);
+	}
+
+	/**
+	 * Sets how long a blob prefix seen in a listing is taken to be a folder
+	 * without asking again, 60 seconds by default. 0 turns the cache off.
+	 * 
+	 * @param opts       The FileSystemOptions.
+	 * @param timeToLive The time in milliseconds.
+	 */
+	public void setFolderCacheTimeToLive(FileSystemOptions opts, long timeToLive) {
+		setParam(opts, "folderCacheTimeToLive", Long.valueOf(timeToLive));
+	}
+
+	/**
+	 * @see #setFolderCacheTimeToLive
+	 * @param opts The FileSystemOptions.
+	 * @return The time in milliseconds.
+	 */
+	public long getFolderCacheTimeToLive(FileSystemOptions opts) {
+		return getLong(opts, "folderCacheTimeToLive", 60000L);
+	}
+
+	/**
+	 * Sets how many blob prefixes are remembered as folders per file system,
+	 * 100000 by default. The least recently used are forgotten first.
+	 * 
+	 * @param opts    The FileSystemOptions.
+	 * @param maxSize The number of prefixes.
+	 */
+	public void setFolderCacheSize(FileSystemOptions opts, int maxSize) {
+		setParam(opts, "folderCacheSize", Integer.valueOf(maxSize));
+	}
+
+	/**
+	 * @see #setFolderCacheSize
+	 * @param opts The FileSystemOptions.
+	 * @return The number of prefixes.
+	 */
+	public int getFolderCacheSize(FileSystemOptions opts) {
+		return getInteger(opts, "folderCacheSize", 100000);
+	}
+
+	/**
+	 * Sets the size of the blocks a blob output stream stages, 4 MiB by default
+	 * (the SDK's). Kept between 16 KiB and 100 MiB; a blob has at most 50000
+	 * blocks, so files beyond 200 GB need larger ones.
+	 * 
+	 * @param opts      The FileSystemOptions.
+	 * @param blockSize The block size in bytes.
+	 */
+	public void setUploadBlockSize(FileSystemOptions opts, int blockSize) {
+		setParam(opts, "uploadBlockSize", Integer.valueOf(blockSize));
+	}
+
+	/**
+	 * @see #setUploadBlockSize
+	 * @param opts The FileSystemOptions.
+	 * @return The block size in bytes, or null for the SDK default.
+	 */
+	public Integer getUploadBlockSize(FileSystemOptions opts) {
+		return getInteger(opts, "uploadBlockSize");
+	}
+
+	/**
+	 * Sets how many blocks a blob output stream uploads at once, 4 by default.
+	 * The SDK alone stages one block at a time.
+	 * 
+	 * @param opts        The FileSystemOptions.
+	 * @param concurrency The number of concurrent requests.
+	 */
+	public void setUploadConcurrency(FileSystemOptions opts, int concurrency) {
+		setParam(opts, "uploadConcurrency", Integer.valueOf(concurrency));
+	}
+
+	/**
+	 * @see #setUploadConcurrency
+	 * @param opts The FileSystemOptions.
+	 * @return The number of concurrent requests.
+	 */
+	public int getUploadConcurrency(FileSystemOptions opts) {
+		return getInteger(opts, "uploadConcurrency", 4);
+	}
+
+	/**
+	 * Sets the size up to which a blob is uploaded with a single Put Blob request
+	 * rather than staged in blocks, 32 MiB by default. 0 always stages blocks;
+	 * values above 256 MiB, the most a single Put Blob takes, are lowered to it.
+	 * <p>
+	 * Content up to this size is held in memory until the output stream is
+	 * closed, so each open blob output stream may buffer up to 32 MiB by default.
+	 * Lower it where many blobs are written at once.
+	 * 
+	 * @param opts      The FileSystemOptions.
+	 * @param threshold The size in bytes.
+	 */
+	public void setSingleBlobPutThreshold(FileSystemOptions opts, int threshold) {
+		setParam(opts, "singleBlobPutThreshold", Integer.valueOf(threshold));
+	}
+
+	/**
+	 * @see #setSingleBlobPutThreshold
+	 * @param opts The FileSystemOptions.
+	 * @return The size in bytes.
+	 */
+	public int getSingleBlobPutThreshold(FileSystemOptions opts) {
+		return getInteger(opts, "singleBlobPutThreshold", 32 * 1024 * 1024);
+	}
+
+	/**
+	 * Sets the size of the ranges a large blob or file is downloaded in, 4 MiB by
+	 * default.
+	 * 
+	 * @param opts      The FileSystemOptions.
+	 * @param chunkSize The range size in bytes.
+	 */
+	public void setDownloadChunkSize(FileSystemOptions opts, int chunkSize) {
+		setParam(opts, "downloadChunkSize", Integer.valueOf(chunkSize));
+	}
+
+	/**
+	 * @see #setDownloadChunkSize
+	 * @param opts The FileSystemOptions.
+	 * @return The range size in bytes.
+	 */
+	public int getDownloadChunkSize(FileSystemOptions opts) {
+		return getInteger(opts, "downloadChunkSize", 4 * 1024 * 1024);
+	}
+
+	/**
+	 * Sets how many ranges of a large blob or file are downloaded at once, 4 by
+	 * default. 1 reads it through a single SDK stream instead.
+	 * 
+	 * @param opts        The FileSystemOptions.
+	 * @param concurrency The number of concurrent requests.
+	 */
+	public void setDownloadConcurrency(FileSystemOptions opts, int concurrency) {
+		setParam(opts, "downloadConcurrency", Integer.valueOf(concurrency));
+	}
+
+	/**
+	 * @see #setDownloadConcurrency
+	 * @param opts The FileSystemOptions.
+	 * @return The number of concurrent requests.
+	 */
+	public int getDownloadConcurrency(FileSystemOptions opts) {
+		return getInteger(opts, "downloadConcurrency", 4);
+	}
+
+	/**
+	 * Sets the size from which a blob or file is downloaded in concurrent ranges,
+	 * 16 MiB by default. Smaller ones are read through a single SDK stream.
+	 * 
+	 * @param opts      The FileSystemOptions.
+	 * @param threshold The size in bytes.
+	 */
+	public void setParallelDownloadThreshold(FileSystemOptions opts, long threshold) {
+		setParam(opts, "parallelDownloadThreshold", Long.valueOf(threshold));
+	}
+
+	/**
+	 * @see #setParallelDownloadThreshold
+	 * @param opts The FileSystemOptions.
+	 * @return The size in bytes.
+	 */
+	public long getParallelDownloadThreshold(FileSystemOptions opts) {
+		return getLong(opts, "parallelDownloadThreshold", 16L * 1024 * 1024);
+	}
+
+	/**
+	 * Sets the size of the blocks random access content reads and caches, 64 KiB
+	 * by default. A read outside the cached blocks costs one request of this
+	 * size.
+	 * 
+	 * @param opts      The FileSystemOptions.
+	 * @param blockSize The block size in bytes.
+	 */
+	public void setRandomAccessBlockSize(FileSystemOptions opts, int blockSize) {
+		setParam(opts, "randomAccessBlockSize", Integer.valueOf(blockSize));
+	}
+
+	/**
+	 * @see #setRandomAccessBlockSize
+	 * @param opts The FileSystemOptions.
+	 * @return The block size in bytes.
+	 */
+	public int getRandomAccessBlockSize(FileSystemOptions opts) {
+		return getInteger(opts, "randomAccessBlockSize", 64 * 1024);
+	}
+
+	/**
+	 * Sets how many blocks each random access content keeps, 64 by default. The
+	 * least recently used are dropped first.
+	 * 
+	 * @param opts   The FileSystemOptions.
+	 * @param blocks The number of blocks.
+	 */
+	public void setRandomAccessCacheBlocks(FileSystemOptions opts, int blocks) {
+		setParam(opts, "randomAccessCacheBlocks", Integer.valueOf(blocks));
+	}
+
+	/**
+	 * @see #setRandomAccessCacheBlocks
+	 * @param opts The FileSystemOptions.
+	 * @return The number of blocks.
+	 */
+	public int getRandomAccessCacheBlocks(FileSystemOptions opts) {
+		return getInteger(opts, "randomAccessCacheBlocks", 64);
+	}
+
+	/**
+	 * Sets the most blocks random access content fetches in one request while
+	 * it is read sequentially, 16 by default. 1 turns read-ahead off.
+	 * 
+	 * @param opts   The FileSystemOptions.
+	 * @param blocks The number of blocks.
+	 */
+	public void setRandomAccessReadAhead(FileSystemOptions opts, int blocks) {
+		setParam(opts, "randomAccessReadAhead", Integer.valueOf(blocks));
+	}
+
+	/**
+	 * @see #setRandomAccessReadAhead
+	 * @param opts The FileSystemOptions.
+	 * @return The number of blocks.
+	 */
+	public int getRandomAccessReadAhead(FileSystemOptions opts) {
+		return getInteger(opts, "randomAccessReadAhead", 16);
+	}
 }
@@ -0,0 +1,79 @@
+package com.nextlabs.vfs.azure;
+
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultSegment;
+import com.nextlabs.vfs.ChildIterator;
+
+/**
+ * A {@link ChildIterator} over an Azure Storage listing fetched one segment at
+ * a time. Only the current segment is held in memory, and the next one is
+ * requested with its continuation token once the current one is used up.
+ * 
+ * @param <T> The listing item type of the service.
+ */
+public abstract class AzSegmentedChildIterator<T> implements ChildIterator {
+
+	private ResultContinuation continuation;
+	private Iterator<T> segment;
+	private FileObject next;
+	private boolean exhausted;
+
+	/**
+	 * Fetches the segment following the given continuation token, or the first
+	 * segment if the token is null.
+	 */
+	protected abstract ResultSegment<T> nextSegment(ResultContinuation continuation) throws Exception;
+
+	/**
+	 * Resolves a listing item to its FileObject, or returns null to skip it.
+	 */
+	protected abstract FileObject toFileObject(T item) throws Exception;
+
+	@Override
+	public boolean hasNext() {
+		while (next == null && !exhausted) {
+			try {
+				if (segment != null && segment.hasNext()) {
+					next = toFileObject(segment.next());
+				} else if (segment != null && continuation == null) {
+					exhausted = true;
+				} else {
+					ResultSegment<T> result = nextSegment(continuation);
+					segment = result.getResults().iterator();
+					continuation = result.getHasMoreResults() ? result.getContinuationToken() : null;
+				}
+			} catch (FileSystemException e) {
+				close();
+				throw new UncheckedIOException(e);
+			} catch (Exception e) {
+				close();
+				throw new UncheckedIOException(new FileSystemException(e));
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public FileObject next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		FileObject res = next;
+		next = null;
+		return res;
+	}
+
+	@Override
+	public void close() {
+		exhausted = true;
+		segment = null;
+		continuation = null;
+	}
+}
@@ -16,37 +16,64 @@
  */
 package com.nextlabs.vfs.azure.blob;
 
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultSegment;
 import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobListingDetails;
 import com.microsoft.azure.storage.blob.BlobContainerProperties;
 import com.microsoft.azure.storage.blob.BlobInputStream;
 import com.microsoft.azure.storage.blob.BlobProperties;
+import com.microsoft.azure.storage.blob.CloudBlob;
 import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.azure.storage.blob.CloudBlobDirectory;
 import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import com.microsoft.azure.storage.blob.ListBlobItem;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
-import org.apache.commons.collections4.CollectionUtils;
+import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.vfs2.FileNotFolderException;
+import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.NameScope;
+import org.apache.commons.vfs2.RandomAccessContent;
 import org.apache.commons.vfs2.provider.AbstractFileName;
 import org.apache.commons.vfs2.provider.AbstractFileObject;
 import org.apache.commons.vfs2.provider.URLFileName;
+import org.apache.commons.vfs2.provider.UriParser;
+import org.apache.commons.vfs2.util.FileObjectUtils;
+import org.apache.commons.vfs2.util.RandomAccessMode;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
+import com.nextlabs.vfs.ChildIterator;
+import com.nextlabs.vfs.ListingMetadata;
+import com.nextlabs.vfs.StreamingListing;
+import com.nextlabs.vfs.azure.AzSegmentedChildIterator;
+import com.nextlabs.vfs.cache.FilesCacheConfigBuilder;
+import com.nextlabs.vfs.constant.SCConstant;
+import com.nextlabs.vfs.io.ParallelRangeInputStream;
+import com.nextlabs.vfs.io.RangeRandomAccessContent;
+import com.nextlabs.vfs.io.RangeReader;
+
 /**
  * The main FileObject class in this provider. It holds most of the API
  * callbacks for the provider.
  * 
  * @author Kervin Pierre
  */
-public class AzBlobObject extends AbstractFileObject {
+public class AzBlobObject extends AbstractFileObject implements StreamingListing {
 	private static final Logger log = LogManager.getLogger(AzBlobObject.class);
 
 	private final AzBlobSystem fileSystem;
@@ -54,6 +81,8 @@ public class AzBlobObject extends AbstractFileObject {
 	private CloudBlockBlob currBlob;
 	private BlobContainerProperties currContainerProperties;
 	private BlobProperties currBlobProperties;
+	// Properties of this file from the listing of its parent, see ListingMetadata
+	private volatile ListingMetadata listed;
 
 	/**
 	 * Creates a new FileObject for use with a remote Azure Blob Storage file or
@@ -141,12 +170,29 @@ public class AzBlobObject extends AbstractFileObject {
 	 */
 	@Override
 	protected FileType doGetType() throws Exception {
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getType() != null) {
+			return listing.getType();
+		}
 		FileType res;
 
 		Pair<String, String> path = getContainerAndPath();
 
-		if (currBlob.exists()) {
+		String prefix = path.getRight();
+		if (prefix.endsWith("/") == false) {
+			// We need folders ( prefixes ) to end with a slash
+			prefix += "/";
+		}
+		// A prefix listed a moment ago with no blob of the same name needs no request. A blob of the same name wins over
+		// a prefix, so it is asked for whenever there may be one.
+		AzBlobPrefixCache folders = fileSystem.getFolderPrefixes();
+		AzBlobPrefixCache.Prefix known = prefix.equals("/") ? AzBlobPrefixCache.Prefix.UNKNOWN : folders.get(path.getLeft(), prefix);
+		if (known == AzBlobPrefixCache.Prefix.FOLDER) {
+			res = FileType.FOLDER;
+		} else if (!prefix.equals("/") && currBlob.exists()) {
 			res = FileType.FILE;
+		} else if (known == AzBlobPrefixCache.Prefix.FOLDER_OR_BLOB) {
+			res = FileType.FOLDER;
 		} else {
 			// Blob Service does not have folders. Just files with path separators in
 			// their names.
@@ -154,23 +200,15 @@ public class AzBlobObject extends AbstractFileObject {
 			// Here's the trick for folders.
 			//
 			// Do a listing on that prefix. If it returns anything, after not
-			// existing, then it's a folder.
-			String prefix = path.getRight();
-			if (prefix.endsWith("/") == false) {
-				// We need folders ( prefixes ) to end with a slash
-				prefix += "/";
-			}
-
-			Iterable<ListBlobItem> blobs = null;
-			if (prefix.equals("/")) {
-				// Special root path case. List the root blobs with no prefix
-				blobs = currContainer.listBlobs();
-			} else {
-				blobs = currContainer.listBlobs(prefix);
-			}
+			// existing, then it's a folder. A single item answers that, so only one
+			// is asked for.
+			// Special root path case. List the root blobs with no prefix
+			String listPrefix = prefix.equals("/") ? null : prefix;
+			ResultSegment<ListBlobItem> probe = currContainer.listBlobsSegmented(listPrefix, false, EnumSet.noneOf(BlobListingDetails.class), 1, null, null, null);
 
-			if (blobs.iterator().hasNext()) {
+			if (!probe.getResults().isEmpty()) {
 				res = FileType.FOLDER;
+				folders.add(path.getLeft(), prefix);
 			} else {
 				res = FileType.IMAGINARY;
 			}
@@ -190,8 +228,6 @@ public class AzBlobObject extends AbstractFileObject {
 	 */
 	@Override
 	protected String[] doListChildren() throws Exception {
-		String[] res = null;
-
 		Pair<String, String> path = getContainerAndPath();
 
 		String prefix = path.getRight();
@@ -199,28 +235,116 @@ public class AzBlobObject extends AbstractFileObject {
 			// We need folders ( prefixes ) to end with a slash
 			prefix += "/";
 		}
+		// Special root path case. List the root blobs with no prefix
+		String listPrefix = prefix.equals("/") ? null : prefix;
+
+		// One page at a time, keeping only the base names, which is what VFS resolves against this folder
+		List<String> resList = new ArrayList<>();
+		AzBlobPrefixCache.SameNames sameNames = new AzBlobPrefixCache.SameNames();
+		ResultContinuation continuation = null;
+		do {
+			ResultSegment<ListBlobItem> segment = currContainer.listBlobsSegmented(listPrefix, false, EnumSet.noneOf(BlobListingDetails.class), fileSystem.getListingPageSize(), continuation, null, null);
+			if (!segment.getResults().isEmpty()) {
+				fileSystem.getFolderPrefixes().add(path.getLeft(), prefix);
+			}
+			for (ListBlobItem item : segment.getResults()) {
+				if (item instanceof CloudBlob) {
+					sameNames.blob(((CloudBlob) item).getName());
+				} else if (item instanceof CloudBlobDirectory) {
+					String itemPrefix = ((CloudBlobDirectory) item).getPrefix();
+					fileSystem.getFolderPrefixes().add(path.getLeft(), itemPrefix, sameNames.prefix(itemPrefix));
+				}
+				String itemPath = StringUtils.removeEnd(UriParser.decode(item.getUri().getRawPath()), "/");
+				resList.add(itemPath.substring(itemPath.lastIndexOf('/') + 1));
+			}
+			continuation = segment.getHasMoreResults() ? segment.getContinuationToken() : null;
+		} while (continuation != null);
 
-		Iterable<ListBlobItem> blobs = null;
-		if (prefix.equals("/")) {
-			// Special root path case. List the root blobs with no prefix
-			blobs = currContainer.listBlobs();
-		} else {
-			blobs = currContainer.listBlobs(prefix);
-		}
+		return resList.toArray(new String[resList.size()]);
+	}
 
-		List<ListBlobItem> blobList = new ArrayList<>();
+	/**
+	 * Lists the children through {@link #iterateChildren()}, so that they come
+	 * back already knowing their type and properties.
+	 * 
+	 * @return The children of this folder.
+	 * @throws Exception if an error occurs.
+	 */
+	@Override
+	protected FileObject[] doListChildrenResolved() throws Exception {
+		List<FileObject> resList = new ArrayList<>();
+		try (ChildIterator children = iterateChildren()) {
+			while (children.hasNext()) {
+				resList.add(FileObjectUtils.getAbstractFileObject(children.next()));
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return resList.toArray(new FileObject[resList.size()]);
+	}
 
-		// Pull it all in memory and work from there
-		CollectionUtils.addAll(blobList, blobs);
-		ArrayList<String> resList = new ArrayList<>();
-		for (ListBlobItem currBlob : blobList) {
-			String currBlobStr = currBlob.getUri().getPath();
-			resList.add(currBlobStr);
+	/**
+	 * Lists the children one segment at a time with
+	 * <code>listBlobsSegmented()</code>, following continuation tokens, so that
+	 * at most one segment of the listing is held in memory. Each child is seeded
+	 * with the type, size, last-modified time and ETag from the listing.
+	 * 
+	 * @return An iterator over the blobs and virtual folders under this folder.
+	 * @throws FileSystemException if this is not a folder.
+	 */
+	@Override
+	public ChildIterator iterateChildren() throws FileSystemException {
+		if (!getType().hasChildren()) {
+			throw new FileNotFolderException(getName());
 		}
+		Pair<String, String> path = getContainerAndPath();
 
-		res = resList.toArray(new String[resList.size()]);
+		String prefix = path.getRight();
+		if (prefix.endsWith("/") == false) {
+			// We need folders ( prefixes ) to end with a slash
+			prefix += "/";
+		}
+		// Special root path case. List the root blobs with no prefix
+		final String listPrefix = prefix.equals("/") ? null : prefix;
+		final String listedFolder = prefix;
+		final CloudBlobContainer container = currContainer;
+		final AzBlobPrefixCache folders = fileSystem.getFolderPrefixes();
+		final AzBlobPrefixCache.SameNames sameNames = new AzBlobPrefixCache.SameNames();
+
+		final long validity = FilesCacheConfigBuilder.getInstance().getListingValidity(getFileSystem().getFileSystemOptions());
+		return new AzSegmentedChildIterator<ListBlobItem>() {
+			@Override
+			protected ResultSegment<ListBlobItem> nextSegment(ResultContinuation continuation) throws Exception {
+				ResultSegment<ListBlobItem> segment = container.listBlobsSegmented(listPrefix, false, EnumSet.noneOf(BlobListingDetails.class), fileSystem.getListingPageSize(), continuation, null, null);
+				if (!segment.getResults().isEmpty()) {
+					folders.add(container.getName(), listedFolder);
+				}
+				return segment;
+			}
 
-		return res;
+			@Override
+			protected FileObject toFileObject(ListBlobItem item) throws Exception {
+				FileObject res = getFileSystem().resolveFile(getFileSystem().getFileSystemManager().resolveName(getName(), UriParser.decode(item.getUri().getRawPath()), NameScope.CHILD));
+				AbstractFileObject<?> child = FileObjectUtils.getAbstractFileObject(res);
+				if (child instanceof AzBlobObject) {
+					if (item instanceof CloudBlob) {
+						sameNames.blob(((CloudBlob) item).getName());
+						BlobProperties props = ((CloudBlob) item).getProperties();
+						Date lm = props.getLastModified();
+						((AzBlobObject) child).seed(new ListingMetadata(FileType.FILE, Long.valueOf(props.getLength()), lm == null ? null : Long.valueOf(lm.getTime()), props.getEtag(), validity));
+					} else if (item instanceof CloudBlobDirectory) {
+						// The blob of the same name, listed before its prefix, keeps it a file
+						String itemPrefix = ((CloudBlobDirectory) item).getPrefix();
+						boolean sameNamedBlob = sameNames.prefix(itemPrefix);
+						if (!sameNamedBlob) {
+							((AzBlobObject) child).seed(new ListingMetadata(FileType.FOLDER, null, null, null, validity));
+						}
+						folders.add(container.getName(), itemPrefix, sameNamedBlob);
+					}
+				}
+				return res;
+			}
+		};
 	}
 
 //    @Override
@@ -274,6 +398,28 @@ public class AzBlobObject extends AbstractFileObject {
 		}
 	}
 
+	/**
+	 * Callback for handling the <code>getAttributes()</code> Commons VFS API
+	 * call. Exposes the blob ETag, which changes whenever the content does.
+	 * 
+	 * @return The attributes of this File Object
+	 * @throws Exception
+	 */
+	@Override
+	protected Map<String, Object> doGetAttributes() throws Exception {
+		Map<String, Object> res = new HashMap<>();
+
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getEtag() != null) {
+			res.put(SCConstant.ETAG_ATTRIBUTE, listing.getEtag());
+			return res;
+		}
+		checkBlobProperties();
+		res.put(SCConstant.ETAG_ATTRIBUTE, currBlobProperties.getEtag());
+
+		return res;
+	}
+
 	/**
 	 * Callback for handling "content size" requests by the provider.
 	 * 
@@ -284,6 +430,10 @@ public class AzBlobObject extends AbstractFileObject {
 	protected long doGetContentSize() throws Exception {
 		long res = -1;
 
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getSize() != null) {
+			return listing.getSize().longValue();
+		}
 		checkBlobProperties();
 		res = currBlobProperties.getLength();
 
@@ -298,11 +448,63 @@ public class AzBlobObject extends AbstractFileObject {
 	 */
 	@Override
 	protected InputStream doGetInputStream() throws Exception {
+		int concurrency = fileSystem.getDownloadConcurrency();
+		if (concurrency > 1) {
+			long size = doGetContentSize();
+			if (size >= fileSystem.getParallelDownloadThreshold()) {
+				return getParallelInputStream(size, concurrency);
+			}
+		}
 		BlobInputStream in = currBlob.openInputStream();
 
 		return in;
 	}
 
+	/*
+	 * Downloads ranges of the blob at once, each through a reader of its own
+	 */
+	private InputStream getParallelInputStream(long size, int concurrency) throws Exception {
+		return new ParallelRangeInputStream(getRangeOpener(size), size, fileSystem.getDownloadChunkSize(), concurrency);
+	}
+
+	/*
+	 * Opens readers on a blob reference of their own each, all pinned to the ETag the size was taken with
+	 */
+	private RangeReader.Opener getRangeOpener(final long size) throws Exception {
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		final String etag;
+		if (listing != null && listing.getEtag() != null) {
+			etag = listing.getEtag();
+		} else {
+			checkBlobProperties();
+			etag = currBlobProperties.getEtag();
+		}
+		final CloudBlobContainer container = currContainer;
+		final String blobName = currBlob.getName();
+		return () -> {
+			try {
+				return new AzBlobRangeReader(container.getBlockBlobReference(blobName), size, etag);
+			} catch (URISyntaxException | StorageException e) {
+				throw new IOException(e);
+			}
+		};
+	}
+
+	/**
+	 * Get random access to the content of this File Object, read in cached
+	 * blocks with ranged requests rather than downloaded whole.
+	 * 
+	 * @param mode The access mode, read only.
+	 * @return The RandomAccessContent object.
+	 * @throws Exception
+	 */
+	@Override
+	protected RandomAccessContent doGetRandomAccessContent(RandomAccessMode mode) throws Exception {
+		long size = doGetContentSize();
+		return new RangeRandomAccessContent(getRangeOpener(size).open(), size, fileSystem.getRandomAccessBlockSize(), fileSystem.getRandomAccessCacheBlocks(),
+				fileSystem.getRandomAccessReadAhead());
+	}
+
 	/**
 	 * Callback for handling delete on this File Object
 	 * 
@@ -351,7 +553,11 @@ public class AzBlobObject extends AbstractFileObject {
 	protected OutputStream doGetOutputStream(boolean bAppend) throws Exception {
 		OutputStream res;
 
-		res = currBlob.openOutputStream();
+		// One request for small content, otherwise blocks of the configured size, several staged at once
+		if (fileSystem.getUploadBlockSize() != null) {
+			currBlob.setStreamWriteSizeInBytes(fileSystem.getUploadBlockSize().intValue());
+		}
+		res = new AzBlobUploadStream(currBlob, fileSystem.getUploadOptions(), fileSystem.getSingleBlobPutThreshold());
 
 		return res;
 	}
@@ -371,6 +577,29 @@ public class AzBlobObject extends AbstractFileObject {
 		currContainerProperties = null;
 	}
 
+	/**
+	 * Callback for when this File Object is created, deleted or written to
+	 * through the library. Drops the cached blob properties so the next size or
+	 * last-modified request reflects the change, and the folders above it from
+	 * the prefix cache.
+	 * 
+	 * @throws Exception
+	 */
+	@Override
+	protected void onChange() throws Exception {
+		currBlobProperties = null;
+		listed = null;
+		// Writing or deleting a blob may have created or emptied the folders above it, and hides the prefix of its name
+		Pair<String, String> path = getContainerAndPath();
+		if (path != null) {
+			fileSystem.getFolderPrefixes().forget(path.getLeft(), path.getRight());
+		}
+	}
+
+	void seed(final ListingMetadata metadata) {
+		listed = metadata;
+	}
+
 	/**
 	 * Callback for handling the <code>getLastModifiedTime()</code> Commons VFS API
 	 * call.
@@ -382,6 +611,10 @@ public class AzBlobObject extends AbstractFileObject {
 	protected long doGetLastModifiedTime() throws Exception {
 		long res;
 
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getLastModified() != null) {
+			return listing.getLastModified().longValue();
+		}
 		checkBlobProperties();
 		Date lm = currBlobProperties.getLastModified();
 
@@ -0,0 +1,149 @@
+package com.nextlabs.vfs.azure.blob;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Prefixes of a blob file system known to be virtual folders, i.e. to have at least one blob under them, with the
+ * time each was last seen and whether a blob of the same name was listed next to it.
+ *
+ * Blob Storage has no folders, so telling a folder from a missing path costs a listing request. Every listing already
+ * shows which of its items are prefixes, and that the listed prefix itself is not empty, so those answers are kept
+ * here and folder checks within the time to live need no listing. A blob of the same name as a prefix makes the path
+ * a file. The listing of the parent shows such a blob right along with the prefix, so a prefix listed without one is
+ * a folder with no request at all. Prefixes listed with one, or only known from their own listing, still ask for the
+ * blob. Entries are dropped, least recently used first, beyond the maximum size, and whenever a blob is written or
+ * deleted through the library, for the prefixes above it, which may be emptied, and for the prefix of its own name.
+ */
+final class AzBlobPrefixCache {
+	/*
+	 * What is known of a prefix
+	 */
+	enum Prefix {
+		// Not seen within the time to live
+		UNKNOWN,
+		// A folder, listed without a blob of the same name
+		FOLDER,
+		// A folder, unless a blob of the same name, listed or not looked for, is still there
+		FOLDER_OR_BLOB
+	}
+
+	private static final class Seen {
+		final long seenAt;
+		// Null when the listing the prefix was seen in could not tell
+		final Boolean sameNamedBlob;
+
+		Seen(final long seenAt, final Boolean sameNamedBlob) {
+			this.seenAt = seenAt;
+			this.sameNamedBlob = sameNamedBlob;
+		}
+	}
+
+	/*
+	 * Follows one listing, which comes in name order, and tells for each prefix whether a blob of the same name came
+	 * before it. Such a blob is listed before its prefix, with only names it starts with in between, so the blobs
+	 * whose names are not a start of the latest listed name are let go.
+	 */
+	static final class SameNames {
+		private final Deque<String> blobs = new ArrayDeque<String>();
+
+		private void skipTo(final String name) {
+			while (!blobs.isEmpty() && !name.startsWith(blobs.peek())) {
+				blobs.pop();
+			}
+		}
+
+		void blob(final String name) {
+			skipTo(name);
+			blobs.push(name);
+		}
+
+		/*
+		 * Whether the prefix, ending with "/", has a blob of the same name
+		 */
+		boolean prefix(final String prefix) {
+			final String name = prefix.substring(0, prefix.length() - 1);
+			skipTo(name);
+			return name.equals(blobs.peek());
+		}
+	}
+
+	private final long timeToLive;
+	private final Map<String, Seen> seen;
+
+	AzBlobPrefixCache(final long timeToLive, final int maxSize) {
+		this.timeToLive = timeToLive;
+		this.seen = new LinkedHashMap<String, Seen>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Seen> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	private static String key(final String container, final String prefix) {
+		return container + '/' + prefix;
+	}
+
+	/*
+	 * Records a prefix, ending with "/", as a folder, listed by its parent with or without a blob of the same name
+	 */
+	void add(final String container, final String prefix, final boolean sameNamedBlob) {
+		if (timeToLive <= 0) {
+			return;
+		}
+		synchronized (seen) {
+			seen.put(key(container, prefix), new Seen(System.currentTimeMillis(), Boolean.valueOf(sameNamedBlob)));
+		}
+	}
+
+	/*
+	 * Records a prefix, ending with "/", as a folder, found not to be empty by its own listing. What the parent
+	 * listing told of a blob of the same name is kept.
+	 */
+	void add(final String container, final String prefix) {
+		if (timeToLive <= 0) {
+			return;
+		}
+		synchronized (seen) {
+			final Seen known = seen.get(key(container, prefix));
+			if (known == null || known.sameNamedBlob == null || isExpired(known)) {
+				seen.put(key(container, prefix), new Seen(System.currentTimeMillis(), null));
+			}
+		}
+	}
+
+	private boolean isExpired(final Seen entry) {
+		return System.currentTimeMillis() - entry.seenAt >= timeToLive;
+	}
+
+	Prefix get(final String container, final String prefix) {
+		synchronized (seen) {
+			final Seen entry = seen.get(key(container, prefix));
+			if (entry == null) {
+				return Prefix.UNKNOWN;
+			}
+			if (isExpired(entry)) {
+				seen.remove(key(container, prefix));
+				return Prefix.UNKNOWN;
+			}
+			return Boolean.FALSE.equals(entry.sameNamedBlob) ? Prefix.FOLDER : Prefix.FOLDER_OR_BLOB;
+		}
+	}
+
+	/*
+	 * Forgets every prefix a blob path lies under, from its parent up, and the prefix of the blob's own name
+	 */
+	void forget(final String container, final String path) {
+		synchronized (seen) {
+			seen.remove(key(container, path + '/'));
+			for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+				seen.remove(key(container, path.substring(0, slash + 1)));
+			}
+		}
+	}
+}
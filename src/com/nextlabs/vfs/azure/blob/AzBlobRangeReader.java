@@ -0,0 +1,43 @@
+package com.nextlabs.vfs.azure.blob;
+
+import java.io.IOException;
+
+import com.microsoft.azure.storage.AccessCondition;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.CloudBlob;
+
+import com.nextlabs.vfs.io.RangeReader;
+
+/*
+ * Reads ranges of a blob with Get Blob range requests. With an ETag, a range of a blob changed since fails with
+ * 412 rather than mixing the old content with the new.
+ */
+class AzBlobRangeReader implements RangeReader {
+	private final CloudBlob blob;
+	private final long length;
+	private final AccessCondition condition;
+
+	AzBlobRangeReader(CloudBlob blob, long length, String etag) {
+		this.blob = blob;
+		this.length = length;
+		this.condition = etag == null ? null : AccessCondition.generateIfMatchCondition(etag);
+	}
+
+	@Override
+	public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+		if (position >= this.length) {
+			return -1;
+		}
+		long count = Math.min(length, this.length - position);
+		try {
+			return blob.downloadRangeToByteArray(position, Long.valueOf(count), buffer, offset, condition, null, null);
+		} catch (StorageException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		// Each request stands alone
+	}
+}
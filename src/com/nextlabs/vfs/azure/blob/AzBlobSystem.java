@@ -16,6 +16,7 @@
  */
 package com.nextlabs.vfs.azure.blob;
 
+import com.microsoft.azure.storage.blob.BlobRequestOptions;
 import com.microsoft.azure.storage.blob.CloudBlobClient;
 import java.util.Collection;
 import org.apache.commons.vfs2.Capability;
@@ -28,6 +29,9 @@ import org.apache.commons.vfs2.provider.GenericFileName;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
+import com.nextlabs.vfs.azure.AzConstants;
+import com.nextlabs.vfs.azure.AzFileSystemConfigBuilder;
+
 /**
  * File-System object represents a connect to Microsoft Azure Blob via a single
  * client.
@@ -38,6 +42,17 @@ public class AzBlobSystem extends AbstractFileSystem implements FileSystem {
 	private static final Logger log = LogManager.getLogger(AzBlobSystem.class);
 
 	private final CloudBlobClient client;
+	private final int listingPageSize;
+	private final int downloadChunkSize;
+	private final int downloadConcurrency;
+	private final long parallelDownloadThreshold;
+	private final int randomAccessBlockSize;
+	private final int randomAccessCacheBlocks;
+	private final int randomAccessReadAhead;
+	private final AzBlobPrefixCache folderPrefixes;
+	private final Integer uploadBlockSize;
+	private final BlobRequestOptions uploadOptions;
+	private final int singleBlobPutThreshold;
 
 	/**
 	 * The single client for interacting with Azure Blob Storage.
@@ -51,6 +66,126 @@ public class AzBlobSystem extends AbstractFileSystem implements FileSystem {
 	protected AzBlobSystem(final GenericFileName rootName, final CloudBlobClient client, final FileSystemOptions fileSystemOptions) {
 		super(rootName, null, fileSystemOptions);
 		this.client = client;
+		this.listingPageSize = Math.max(1, Math.min(AzConstants.LISTING_PAGE_SIZE, AzFileSystemConfigBuilder.getInstance().getListingPageSize(fileSystemOptions)));
+		this.folderPrefixes = new AzBlobPrefixCache(AzFileSystemConfigBuilder.getInstance().getFolderCacheTimeToLive(fileSystemOptions),
+				Math.max(1, AzFileSystemConfigBuilder.getInstance().getFolderCacheSize(fileSystemOptions)));
+
+		// Kept within the range the SDK accepts, which it otherwise only checks once a stream is opened
+		Integer blockSize = AzFileSystemConfigBuilder.getInstance().getUploadBlockSize(fileSystemOptions);
+		this.uploadBlockSize = blockSize == null ? null : Integer.valueOf(Math.max(AzConstants.MIN_UPLOAD_BLOCK_SIZE, Math.min(AzConstants.MAX_UPLOAD_BLOCK_SIZE, blockSize.intValue())));
+		this.uploadOptions = new BlobRequestOptions();
+		this.uploadOptions.setConcurrentRequestCount(Math.max(1, AzFileSystemConfigBuilder.getInstance().getUploadConcurrency(fileSystemOptions)));
+		this.singleBlobPutThreshold = Math.max(0, Math.min(AzConstants.MAX_SINGLE_BLOB_PUT_THRESHOLD, AzFileSystemConfigBuilder.getInstance().getSingleBlobPutThreshold(fileSystemOptions)));
+		// The SDK refuses values below 1 MiB, and only applies its own to uploads of a known length
+		this.uploadOptions.setSingleBlobPutThresholdInBytes(Math.max(AzConstants.MIN_SINGLE_BLOB_PUT_THRESHOLD, singleBlobPutThreshold));
+
+		this.downloadChunkSize = Math.max(1, AzFileSystemConfigBuilder.getInstance().getDownloadChunkSize(fileSystemOptions));
+		this.downloadConcurrency = AzFileSystemConfigBuilder.getInstance().getDownloadConcurrency(fileSystemOptions);
+		this.parallelDownloadThreshold = AzFileSystemConfigBuilder.getInstance().getParallelDownloadThreshold(fileSystemOptions);
+
+		this.randomAccessBlockSize = Math.max(1, AzFileSystemConfigBuilder.getInstance().getRandomAccessBlockSize(fileSystemOptions));
+		this.randomAccessCacheBlocks = Math.max(1, AzFileSystemConfigBuilder.getInstance().getRandomAccessCacheBlocks(fileSystemOptions));
+		this.randomAccessReadAhead = Math.max(1, AzFileSystemConfigBuilder.getInstance().getRandomAccessReadAhead(fileSystemOptions));
+	}
+
+	/**
+	 * Size of the blocks staged by blob output streams, null for the SDK default.
+	 * 
+	 * @return
+	 */
+	protected Integer getUploadBlockSize() {
+		return uploadBlockSize;
+	}
+
+	/**
+	 * Request options for uploads, a new copy each time as the SDK fills in the
+	 * values left unset.
+	 * 
+	 * @return
+	 */
+	protected BlobRequestOptions getUploadOptions() {
+		return new BlobRequestOptions(uploadOptions);
+	}
+
+	/**
+	 * Size up to which blobs are uploaded with a single request.
+	 * 
+	 * @return
+	 */
+	protected int getSingleBlobPutThreshold() {
+		return singleBlobPutThreshold;
+	}
+
+	/**
+	 * Prefixes known to be folders.
+	 * 
+	 * @return
+	 */
+	AzBlobPrefixCache getFolderPrefixes() {
+		return folderPrefixes;
+	}
+
+	/**
+	 * Size of the ranges large files are downloaded in.
+	 * 
+	 * @return
+	 */
+	protected int getDownloadChunkSize() {
+		return downloadChunkSize;
+	}
+
+	/**
+	 * Number of ranges downloaded at once, below 2 for none.
+	 * 
+	 * @return
+	 */
+	protected int getDownloadConcurrency() {
+		return downloadConcurrency;
+	}
+
+	/**
+	 * Size from which files are downloaded in concurrent ranges.
+	 * 
+	 * @return
+	 */
+	protected long getParallelDownloadThreshold() {
+		return parallelDownloadThreshold;
+	}
+
+	/**
+	 * Size of the blocks random access content reads and caches.
+	 * 
+	 * @return
+	 */
+	protected int getRandomAccessBlockSize() {
+		return randomAccessBlockSize;
+	}
+
+	/**
+	 * Number of blocks each random access content keeps.
+	 * 
+	 * @return
+	 */
+	protected int getRandomAccessCacheBlocks() {
+		return randomAccessCacheBlocks;
+	}
+
+	/**
+	 * Most blocks random access content fetches at once when read sequentially.
+	 * 
+	 * @return
+	 */
+	protected int getRandomAccessReadAhead() {
+		return randomAccessReadAhead;
+	}
+
+	/**
+	 * Items requested per page when listing a folder.
+	 * 
+	 * @return
+	 */
+	protected int getListingPageSize() {
+		return listingPageSize;
 	}
 
 	@Override
@@ -0,0 +1,91 @@
+package com.nextlabs.vfs.azure.blob;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobRequestOptions;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+
+/*
+ * Writes a block blob with a single Put Blob request when its content stays within the single-put threshold, and
+ * through the SDK's block output stream, which stages several blocks at once, when it grows beyond.
+ *
+ * The SDK only applies the threshold to uploads of a known length, and its output stream always stages blocks and
+ * commits a block list, i.e. two requests for even the smallest file. The content is therefore held here until it
+ * either ends, and goes out in one request, or passes the threshold, and is handed to a block stream.
+ */
+class AzBlobUploadStream extends OutputStream {
+	private final CloudBlockBlob blob;
+	private final BlobRequestOptions options;
+	private final int threshold;
+
+	private byte[] buffer = new byte[8192];
+	private int count;
+	// Set once the content passed the threshold
+	private OutputStream blocks;
+	private boolean closed;
+
+	AzBlobUploadStream(CloudBlockBlob blob, BlobRequestOptions options, int threshold) {
+		this.blob = blob;
+		this.options = options;
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (blocks == null && count + len > threshold) {
+			try {
+				blocks = blob.openOutputStream(null, options, null);
+			} catch (StorageException e) {
+				throw new IOException(e);
+			}
+			blocks.write(buffer, 0, count);
+			buffer = null;
+		}
+		if (blocks != null) {
+			blocks.write(b, off, len);
+			return;
+		}
+		if (count + len > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.min(threshold, Math.max(buffer.length * 2, count + len)));
+		}
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (blocks != null) {
+			blocks.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (blocks != null) {
+			blocks.close();
+			return;
+		}
+		try {
+			blob.uploadFromByteArray(buffer, 0, count, null, options, null);
+		} catch (StorageException e) {
+			throw new IOException(e);
+		} finally {
+			buffer = null;
+		}
+	}
+}
@@ -16,6 +16,8 @@
  */
 package com.nextlabs.vfs.azure.file;
 
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultSegment;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.file.CloudFile;
 import com.microsoft.azure.storage.file.CloudFileDirectory;
@@ -27,28 +29,42 @@ import com.microsoft.azure.storage.file.ListFileItem;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import org.apache.commons.collections4.CollectionUtils;
+import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.vfs2.FileNotFolderException;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileType;
 import org.apache.commons.vfs2.NameScope;
+import org.apache.commons.vfs2.RandomAccessContent;
 import org.apache.commons.vfs2.provider.AbstractFileName;
 import org.apache.commons.vfs2.provider.AbstractFileObject;
 import org.apache.commons.vfs2.provider.AbstractFileSystem;
 import org.apache.commons.vfs2.provider.UriParser;
 import org.apache.commons.vfs2.util.FileObjectUtils;
+import org.apache.commons.vfs2.util.RandomAccessMode;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
+import com.nextlabs.vfs.ChildIterator;
+import com.nextlabs.vfs.ListingMetadata;
+import com.nextlabs.vfs.StreamingListing;
 import com.nextlabs.vfs.URLFileName;
+import com.nextlabs.vfs.azure.AzSegmentedChildIterator;
+import com.nextlabs.vfs.cache.FilesCacheConfigBuilder;
+import com.nextlabs.vfs.constant.SCConstant;
+import com.nextlabs.vfs.io.ParallelRangeInputStream;
+import com.nextlabs.vfs.io.RangeRandomAccessContent;
+import com.nextlabs.vfs.io.RangeReader;
 
 /**
  * The main FileObject class in this provider. It holds most of the API
@@ -56,7 +72,7 @@ import com.nextlabs.vfs.URLFileName;
  * 
  * @author Theodore Lee
  */
-public class AzFileObject extends AbstractFileObject<AbstractFileSystem> {
+public class AzFileObject extends AbstractFileObject<AbstractFileSystem> implements StreamingListing {
 	private static final Logger log = LogManager.getLogger(AzFileObject.class);
 
 	private final AzFileSystem fileSystem;
@@ -64,6 +80,8 @@ public class AzFileObject extends AbstractFileObject<AbstractFileSystem> {
 	private CloudFileDirectory rootDir;
 	private CloudFileDirectory currDir;
 	private FileProperties currFileProperties;
+	// Properties of this file from the listing of its parent, see ListingMetadata
+	private volatile ListingMetadata listed;
 	
 	private static class AzFileOutputStream extends OutputStream implements AutoCloseable {
 		private static final Logger logger = LogManager.getLogger(AzFileOutputStream.class);
@@ -227,6 +245,10 @@ public class AzFileObject extends AbstractFileObject<AbstractFileSystem> {
 	 */
 	@Override
 	protected FileType doGetType() throws Exception {
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getType() != null) {
+			return listing.getType();
+		}
 		String prefix = getContainerAndPath().getRight();
 		try {
 			if (!prefix.equals("/") && currFile.exists()) return FileType.FILE;
@@ -255,19 +277,58 @@ public class AzFileObject extends AbstractFileObject<AbstractFileSystem> {
 	
 	@Override
 	protected FileObject[] doListChildrenResolved() throws Exception {
-		Iterable<ListFileItem> files = currDir.listFilesAndDirectories();
-		List<ListFileItem> fileList = new ArrayList<>();
-		// Pull it all in memory and work from there
-		CollectionUtils.addAll(fileList, files);
 		ArrayList<AzFileObject> resList = new ArrayList<>();
-		for (ListFileItem currFile : fileList) {
-			AzFileObject file = (AzFileObject) FileObjectUtils.getAbstractFileObject(getFileSystem().resolveFile(getFileSystem().getFileSystemManager().resolveName(getName(), UriParser.decode(currFile.getUri().toString().substring(currFile.getParent().getUri().toString().length()+1)), NameScope.CHILD)));
-			resList.add(file);
+		try (ChildIterator children = iterateChildren()) {
+			while (children.hasNext()) {
+				resList.add((AzFileObject) FileObjectUtils.getAbstractFileObject(children.next()));
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
 		}
 		AzFileObject[] res = resList.toArray(new AzFileObject[resList.size()]);
 		return res;
 	}
 
+	/**
+	 * Lists the children one segment at a time with
+	 * <code>listFilesAndDirectoriesSegmented()</code>, following continuation
+	 * tokens, so that at most one segment of the listing is held in memory. Each
+	 * child is seeded with its type and, for files, its length.
+	 * 
+	 * @return An iterator over the files and directories in this directory.
+	 * @throws FileSystemException if this is not a folder.
+	 */
+	@Override
+	public ChildIterator iterateChildren() throws FileSystemException {
+		if (!getType().hasChildren()) {
+			throw new FileNotFolderException(getName());
+		}
+		final CloudFileDirectory dir = currDir;
+
+		final long validity = FilesCacheConfigBuilder.getInstance().getListingValidity(getFileSystem().getFileSystemOptions());
+		return new AzSegmentedChildIterator<ListFileItem>() {
+			@Override
+			protected ResultSegment<ListFileItem> nextSegment(ResultContinuation continuation) throws Exception {
+				return dir.listFilesAndDirectoriesSegmented(fileSystem.getListingPageSize(), continuation, null, null);
+			}
+
+			@Override
+			protected FileObject toFileObject(ListFileItem item) throws Exception {
+				FileObject res = getFileSystem().resolveFile(getFileSystem().getFileSystemManager().resolveName(getName(), UriParser.decode(item.getUri().toString().substring(item.getParent().getUri().toString().length()+1)), NameScope.CHILD));
+				AbstractFileObject<?> child = FileObjectUtils.getAbstractFileObject(res);
+				if (child instanceof AzFileObject) {
+					// The listing has the length of files but no last-modified time or ETag
+					if (item instanceof CloudFile) {
+						((AzFileObject) child).seed(new ListingMetadata(FileType.FILE, Long.valueOf(((CloudFile) item).getProperties().getLength()), null, null, validity));
+					} else if (item instanceof CloudFileDirectory) {
+						((AzFileObject) child).seed(new ListingMetadata(FileType.FOLDER, null, null, null, validity));
+					}
+				}
+				return res;
+			}
+		};
+	}
+
 	private void checkFileProperties() throws StorageException {
 		if (currFileProperties == null) {
 			currFile.downloadAttributes();
@@ -275,6 +336,28 @@ public class AzFileObject extends AbstractFileObject<AbstractFileSystem> {
 		}
 	}
 
+	/**
+	 * Callback for handling the <code>getAttributes()</code> Commons VFS API
+	 * call. Exposes the file ETag, which changes whenever the content does.
+	 * 
+	 * @return The attributes of this File Object
+	 * @throws Exception
+	 */
+	@Override
+	protected Map<String, Object> doGetAttributes() throws Exception {
+		Map<String, Object> res = new HashMap<>();
+
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getEtag() != null) {
+			res.put(SCConstant.ETAG_ATTRIBUTE, listing.getEtag());
+			return res;
+		}
+		checkFileProperties();
+		res.put(SCConstant.ETAG_ATTRIBUTE, currFileProperties.getEtag());
+
+		return res;
+	}
+
 	/**
 	 * Callback for handling "content size" requests by the provider.
 	 * 
@@ -285,6 +368,10 @@ public class AzFileObject extends AbstractFileObject<AbstractFileSystem> {
 	protected long doGetContentSize() throws Exception {
 		long res = -1;
 
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getSize() != null) {
+			return listing.getSize().longValue();
+		}
 		checkFileProperties();
 		res = currFileProperties.getLength();
 
@@ -299,9 +386,54 @@ public class AzFileObject extends AbstractFileObject<AbstractFileSystem> {
 	 */
 	@Override
 	protected InputStream doGetInputStream() throws Exception {
+		int concurrency = fileSystem.getDownloadConcurrency();
+		if (concurrency > 1) {
+			long size = doGetContentSize();
+			if (size >= fileSystem.getParallelDownloadThreshold()) {
+				return getParallelInputStream(size, concurrency);
+			}
+		}
 		return currFile.openRead();
 	}
 
+	/*
+	 * Downloads ranges of the file at once, each through a reader of its own
+	 */
+	private InputStream getParallelInputStream(long size, int concurrency) {
+		return new ParallelRangeInputStream(getRangeOpener(size), size, fileSystem.getDownloadChunkSize(), concurrency);
+	}
+
+	/*
+	 * Opens readers on a file reference of their own each. Unlike blobs, Get File takes no If-Match, so a file
+	 * rewritten meanwhile is not detected.
+	 */
+	private RangeReader.Opener getRangeOpener(final long size) {
+		final CloudFileDirectory root = rootDir;
+		final String filePath = getContainerAndPath().getRight();
+		return () -> {
+			try {
+				return new AzFileRangeReader(root.getFileReference(filePath), size);
+			} catch (URISyntaxException | StorageException e) {
+				throw new IOException(e);
+			}
+		};
+	}
+
+	/**
+	 * Get random access to the content of this File Object, read in cached
+	 * blocks with ranged requests rather than downloaded whole.
+	 * 
+	 * @param mode The access mode, read only.
+	 * @return The RandomAccessContent object.
+	 * @throws Exception
+	 */
+	@Override
+	protected RandomAccessContent doGetRandomAccessContent(RandomAccessMode mode) throws Exception {
+		long size = doGetContentSize();
+		return new RangeRandomAccessContent(getRangeOpener(size).open(), size, fileSystem.getRandomAccessBlockSize(), fileSystem.getRandomAccessCacheBlocks(),
+				fileSystem.getRandomAccessReadAhead());
+	}
+
 	/**
 	 * Callback for handling delete on this File Object
 	 * 
@@ -365,6 +497,23 @@ public class AzFileObject extends AbstractFileObject<AbstractFileSystem> {
 		currFileProperties = null;
 	}
 
+	/**
+	 * Callback for when this File Object is created, deleted or written to
+	 * through the library. Drops the cached file properties so the next size or
+	 * last-modified request reflects the change.
+	 * 
+	 * @throws Exception
+	 */
+	@Override
+	protected void onChange() throws Exception {
+		currFileProperties = null;
+		listed = null;
+	}
+
+	void seed(final ListingMetadata metadata) {
+		listed = metadata;
+	}
+
 	/**
 	 * Callback for handling the <code>getLastModifiedTime()</code> Commons VFS API
 	 * call.
@@ -374,6 +523,10 @@ public class AzFileObject extends AbstractFileObject<AbstractFileSystem> {
 	 */
 	@Override
 	protected long doGetLastModifiedTime() throws Exception {
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getLastModified() != null) {
+			return listing.getLastModified().longValue();
+		}
 		try {
 			checkFileProperties();
 			Date lm = currFileProperties.getLastModified();
@@ -0,0 +1,39 @@
+package com.nextlabs.vfs.azure.file;
+
+import java.io.IOException;
+
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.file.CloudFile;
+
+import com.nextlabs.vfs.io.RangeReader;
+
+/*
+ * Reads ranges of an Azure file with Get File range requests.
+ */
+class AzFileRangeReader implements RangeReader {
+	private final CloudFile file;
+	private final long length;
+
+	AzFileRangeReader(CloudFile file, long length) {
+		this.file = file;
+		this.length = length;
+	}
+
+	@Override
+	public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+		if (position >= this.length) {
+			return -1;
+		}
+		long count = Math.min(length, this.length - position);
+		try {
+			return file.downloadRangeToByteArray(position, Long.valueOf(count), buffer, offset);
+		} catch (StorageException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		// Each request stands alone
+	}
+}
@@ -30,6 +30,9 @@ import org.apache.commons.vfs2.provider.GenericFileName;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
+import com.nextlabs.vfs.azure.AzConstants;
+import com.nextlabs.vfs.azure.AzFileSystemConfigBuilder;
+
 /**
  * File-System object represents a connect to Microsoft Azure Blob via a single
  * client.
@@ -40,6 +43,13 @@ public class AzFileSystem extends AbstractFileSystem implements FileSystem {
 	private static final Logger log = LogManager.getLogger(AzFileSystem.class);
 
 	private final CloudFileClient client;
+	private final int listingPageSize;
+	private final int downloadChunkSize;
+	private final int downloadConcurrency;
+	private final long parallelDownloadThreshold;
+	private final int randomAccessBlockSize;
+	private final int randomAccessCacheBlocks;
+	private final int randomAccessReadAhead;
 
 	/**
 	 * The single client for interacting with Azure Blob Storage.
@@ -53,6 +63,78 @@ public class AzFileSystem extends AbstractFileSystem implements FileSystem {
 	protected AzFileSystem(final GenericFileName rootName, final CloudFileClient client, final FileSystemOptions fileSystemOptions) {
 		super(rootName, null, fileSystemOptions);
 		this.client = client;
+		this.listingPageSize = Math.max(1, Math.min(AzConstants.LISTING_PAGE_SIZE, AzFileSystemConfigBuilder.getInstance().getListingPageSize(fileSystemOptions)));
+
+		this.downloadChunkSize = Math.max(1, AzFileSystemConfigBuilder.getInstance().getDownloadChunkSize(fileSystemOptions));
+		this.downloadConcurrency = AzFileSystemConfigBuilder.getInstance().getDownloadConcurrency(fileSystemOptions);
+		this.parallelDownloadThreshold = AzFileSystemConfigBuilder.getInstance().getParallelDownloadThreshold(fileSystemOptions);
+
+		this.randomAccessBlockSize = Math.max(1, AzFileSystemConfigBuilder.getInstance().getRandomAccessBlockSize(fileSystemOptions));
+		this.randomAccessCacheBlocks = Math.max(1, AzFileSystemConfigBuilder.getInstance().getRandomAccessCacheBlocks(fileSystemOptions));
+		this.randomAccessReadAhead = Math.max(1, AzFileSystemConfigBuilder.getInstance().getRandomAccessReadAhead(fileSystemOptions));
+	}
+
+	/**
+	 * Size of the ranges large files are downloaded in.
+	 * 
+	 * @return
+	 */
+	protected int getDownloadChunkSize() {
+		return downloadChunkSize;
+	}
+
+	/**
+	 * Number of ranges downloaded at once, below 2 for none.
+	 * 
+	 * @return
+	 */
+	protected int getDownloadConcurrency() {
+		return downloadConcurrency;
+	}
+
+	/**
+	 * Size from which files are downloaded in concurrent ranges.
+	 * 
+	 * @return
+	 */
+	protected long getParallelDownloadThreshold() {
+		return parallelDownloadThreshold;
+	}
+
+	/**
+	 * Size of the blocks random access content reads and caches.
+	 * 
+	 * @return
+	 */
+	protected int getRandomAccessBlockSize() {
+		return randomAccessBlockSize;
+	}
+
+	/**
+	 * Number of blocks each random access content keeps.
+	 * 
+	 * @return
+	 */
+	protected int getRandomAccessCacheBlocks() {
+		return randomAccessCacheBlocks;
+	}
+
+	/**
+	 * Most blocks random access content fetches at once when read sequentially.
+	 * 
+	 * @return
+	 */
+	protected int getRandomAccessReadAhead() {
+		return randomAccessReadAhead;
+	}
+
+	/**
+	 * Items requested per page when listing a folder.
+	 * 
+	 * @return
+	 */
+	protected int getListingPageSize() {
+		return listingPageSize;
 	}
 
 	@Override
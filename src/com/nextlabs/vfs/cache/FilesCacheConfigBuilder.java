@@ -0,0 +1,76 @@
+package com.nextlabs.vfs.cache;
+
+import org.apache.commons.vfs2.FileSystem;
+import org.apache.commons.vfs2.FileSystemConfigBuilder;
+import org.apache.commons.vfs2.FileSystemOptions;
+
+import com.nextlabs.vfs.ListingMetadata;
+import com.nextlabs.vfs.dto.CacheSettings;
+
+/**
+ * Per repository settings of the {@link RepositoryFilesCache}, carried in the
+ * FileSystemOptions of the repository so that they apply to every file system
+ * created for it, whatever the provider.
+ */
+public class FilesCacheConfigBuilder extends FileSystemConfigBuilder {
+	private static final FilesCacheConfigBuilder BUILDER = new FilesCacheConfigBuilder();
+
+	protected FilesCacheConfigBuilder() {
+		super("cache.");
+	}
+
+	public static FilesCacheConfigBuilder getInstance() {
+		return BUILDER;
+	}
+
+	public void setCacheSettings(final FileSystemOptions opts, final CacheSettings settings) {
+		setMaxEntries(opts, settings.getMaxEntries());
+		setTimeToLive(opts, settings.getTimeToLive());
+		setWeakReferences(opts, settings.isWeakReferences());
+		if (settings.getTimeToLive() > ListingMetadata.DEFAULT_VALIDITY) {
+			// Trusting cached FileObjects that long, the metadata their listing gave them can be trusted as long
+			setListingValidity(opts, settings.getTimeToLive());
+		}
+	}
+
+	public void setMaxEntries(final FileSystemOptions opts, int maxEntries) {
+		setParam(opts, "maxEntries", Integer.valueOf(maxEntries));
+	}
+
+	public int getMaxEntries(final FileSystemOptions opts, int defaultValue) {
+		return getInteger(opts, "maxEntries", defaultValue);
+	}
+
+	public void setTimeToLive(final FileSystemOptions opts, long timeToLive) {
+		setParam(opts, "timeToLive", Long.valueOf(timeToLive));
+	}
+
+	public long getTimeToLive(final FileSystemOptions opts, long defaultValue) {
+		return getLong(opts, "timeToLive", defaultValue);
+	}
+
+	public void setWeakReferences(final FileSystemOptions opts, boolean weakReferences) {
+		setParam(opts, "weakReferences", Boolean.valueOf(weakReferences));
+	}
+
+	public boolean isWeakReferences(final FileSystemOptions opts, boolean defaultValue) {
+		return getBoolean(opts, "weakReferences", defaultValue);
+	}
+
+	/*
+	 * Milliseconds the type, size, last-modified time and ETag a listing gives its children are trusted for, see
+	 * ListingMetadata. Applies whether or not the manager caches FileObjects.
+	 */
+	public void setListingValidity(final FileSystemOptions opts, long validity) {
+		setParam(opts, "listingValidity", Long.valueOf(validity));
+	}
+
+	public long getListingValidity(final FileSystemOptions opts) {
+		return getLong(opts, "listingValidity", ListingMetadata.DEFAULT_VALIDITY);
+	}
+
+	@Override
+	protected Class<? extends FileSystem> getConfigClass() {
+		return FileSystem.class;
+	}
+}
@@ -0,0 +1,303 @@
+package com.nextlabs.vfs.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystem;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.cache.AbstractFilesCache;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.nextlabs.vfs.dto.CacheSettings;
+
+/**
+ * A FilesCache that keeps a bounded, least recently used set of FileObjects per
+ * file system.
+ *
+ * Used with {@link org.apache.commons.vfs2.CacheStrategy#MANUAL}, a cached
+ * FileObject stays attached, so its type and children (and the size and
+ * last-modified time the providers keep once fetched) are answered without
+ * going back to the server. Changes made through this library (writes, deletes,
+ * renames, folder creation) update the cached objects through the usual
+ * AbstractFileObject notifications. Changes made by anyone else are picked up
+ * once an entry outlives its time to live, at which point the FileObject is
+ * refreshed before it is handed out again.
+ *
+ * The bound, time to live and reference strength are read from the
+ * FileSystemOptions of each file system through
+ * {@link FilesCacheConfigBuilder}, falling back to the defaults given to the
+ * constructor.
+ */
+public class RepositoryFilesCache extends AbstractFilesCache {
+	private static final Logger log = LogManager.getLogger(RepositoryFilesCache.class);
+
+	private final CacheSettings defaults;
+	private final ConcurrentMap<FileSystem, FileSystemCache> caches = new ConcurrentHashMap<FileSystem, FileSystemCache>();
+	private final Counters totals = new Counters();
+
+	/**
+	 * Hit, miss, eviction and expiry counts of the cache or of one of its file
+	 * systems.
+	 */
+	public static final class Statistics {
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		private final long expirations;
+		private final int size;
+
+		Statistics(long hits, long misses, long evictions, long expirations, int size) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.expirations = expirations;
+			this.size = size;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * @return Entries dropped to stay within the size bound or collected by the
+		 *         garbage collector.
+		 */
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * @return Hits on entries that had outlived their time to live and were
+		 *         refreshed first.
+		 */
+		public long getExpirations() {
+			return expirations;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public double getHitRatio() {
+			long lookups = hits + misses;
+			return lookups == 0 ? 0 : (double) hits / lookups;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("hits=%d, misses=%d, evictions=%d, expirations=%d, size=%d", hits, misses, evictions, expirations, size);
+		}
+	}
+
+	private static final class Counters {
+		final AtomicLong hits = new AtomicLong();
+		final AtomicLong misses = new AtomicLong();
+		final AtomicLong evictions = new AtomicLong();
+		final AtomicLong expirations = new AtomicLong();
+	}
+
+	private static final class CachedFile {
+		final Reference<FileObject> reference;
+		final FileObject file;
+		long loadedAt;
+
+		CachedFile(FileObject file, boolean weak, long now) {
+			this.reference = weak ? new WeakReference<FileObject>(file) : null;
+			this.file = weak ? null : file;
+			this.loadedAt = now;
+		}
+
+		FileObject get() {
+			return reference == null ? file : reference.get();
+		}
+	}
+
+	private final class FileSystemCache extends LinkedHashMap<FileName, CachedFile> {
+		private static final long serialVersionUID = 1L;
+
+		final int maxEntries;
+		final long timeToLive;
+		final boolean weakReferences;
+		final Counters counters = new Counters();
+
+		FileSystemCache(int maxEntries, long timeToLive, boolean weakReferences) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+			this.timeToLive = timeToLive;
+			this.weakReferences = weakReferences;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<FileName, CachedFile> eldest) {
+			if (size() > maxEntries) {
+				counters.evictions.incrementAndGet();
+				totals.evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @param defaults Settings used for file systems whose options do not carry
+	 *                 their own.
+	 */
+	public RepositoryFilesCache(CacheSettings defaults) {
+		this.defaults = defaults;
+	}
+
+	private FileSystemCache getCache(final FileSystem filesystem) {
+		FileSystemCache cache = caches.get(filesystem);
+		if (cache == null) {
+			FileSystemOptions opts = filesystem.getFileSystemOptions();
+			FilesCacheConfigBuilder builder = FilesCacheConfigBuilder.getInstance();
+			FileSystemCache created = new FileSystemCache(
+					Math.max(1, builder.getMaxEntries(opts, defaults.getMaxEntries())),
+					builder.getTimeToLive(opts, defaults.getTimeToLive()),
+					builder.isWeakReferences(opts, defaults.isWeakReferences()));
+			cache = caches.putIfAbsent(filesystem, created);
+			if (cache == null) {
+				cache = created;
+			}
+		}
+		return cache;
+	}
+
+	@Override
+	public void putFile(final FileObject file) {
+		FileSystemCache cache = getCache(file.getFileSystem());
+		synchronized (cache) {
+			cache.put(file.getName(), new CachedFile(file, cache.weakReferences, System.currentTimeMillis()));
+		}
+	}
+
+	@Override
+	public boolean putFileIfAbsent(final FileObject file) {
+		FileSystemCache cache = getCache(file.getFileSystem());
+		synchronized (cache) {
+			CachedFile entry = cache.get(file.getName());
+			if (entry != null && entry.get() != null) {
+				return false;
+			}
+			cache.put(file.getName(), new CachedFile(file, cache.weakReferences, System.currentTimeMillis()));
+			return true;
+		}
+	}
+
+	@Override
+	public FileObject getFile(final FileSystem filesystem, final FileName name) {
+		FileSystemCache cache = getCache(filesystem);
+		FileObject file;
+		boolean expired = false;
+		synchronized (cache) {
+			CachedFile entry = cache.get(name);
+			file = entry == null ? null : entry.get();
+			if (file == null) {
+				if (entry != null) {
+					// Collected by the garbage collector
+					cache.remove(name);
+					cache.counters.evictions.incrementAndGet();
+					totals.evictions.incrementAndGet();
+				}
+				cache.counters.misses.incrementAndGet();
+				totals.misses.incrementAndGet();
+				return null;
+			}
+			long now = System.currentTimeMillis();
+			if (cache.timeToLive > 0 && now - entry.loadedAt >= cache.timeToLive) {
+				entry.loadedAt = now;
+				expired = true;
+			}
+		}
+		cache.counters.hits.incrementAndGet();
+		totals.hits.incrementAndGet();
+		if (expired) {
+			cache.counters.expirations.incrementAndGet();
+			totals.expirations.incrementAndGet();
+			try {
+				// Drops the type, children and content metadata, which are fetched again on next use
+				file.refresh();
+			} catch (FileSystemException e) {
+				log.warn("Could not refresh expired cache entry " + name, e);
+			}
+		}
+		return file;
+	}
+
+	@Override
+	public void clear(final FileSystem filesystem) {
+		FileSystemCache cache = caches.remove(filesystem);
+		if (cache != null) {
+			synchronized (cache) {
+				cache.clear();
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		caches.clear();
+	}
+
+	@Override
+	public void removeFile(final FileSystem filesystem, final FileName name) {
+		FileSystemCache cache = caches.get(filesystem);
+		if (cache != null) {
+			synchronized (cache) {
+				cache.remove(name);
+			}
+		}
+	}
+
+	@Override
+	public void touchFile(final FileObject file) {
+		FileSystemCache cache = caches.get(file.getFileSystem());
+		if (cache != null) {
+			synchronized (cache) {
+				// Access ordered, so a lookup moves the entry to the most recently used end
+				cache.get(file.getName());
+			}
+		}
+	}
+
+	/**
+	 * @return Counts summed over every file system this cache has served.
+	 */
+	public Statistics getStatistics() {
+		int size = 0;
+		for (FileSystemCache cache : caches.values()) {
+			synchronized (cache) {
+				size += cache.size();
+			}
+		}
+		return new Statistics(totals.hits.get(), totals.misses.get(), totals.evictions.get(), totals.expirations.get(), size);
+	}
+
+	/**
+	 * @return Counts for a single file system, or null if nothing has been cached
+	 *         for it.
+	 */
+	public Statistics getStatistics(final FileSystem filesystem) {
+		FileSystemCache cache = caches.get(filesystem);
+		if (cache == null) {
+			return null;
+		}
+		synchronized (cache) {
+			return new Statistics(cache.counters.hits.get(), cache.counters.misses.get(), cache.counters.evictions.get(), cache.counters.expirations.get(), cache.size());
+		}
+	}
+}
@@ -29,4 +29,8 @@ public enum RepositoryType {
 	public static RepositoryType getRepositoryType(String repositoryType) {
 		return Arrays.stream(RepositoryType.values()).filter(t -> t.getDisplayValue().equals(repositoryType)).findFirst().orElse(null);
 	}
+
+	public static RepositoryType getTypeByNameString(String name) {
+		return Arrays.stream(RepositoryType.values()).filter(t -> t.getName().equals(name)).findFirst().orElse(null);
+	}
 }
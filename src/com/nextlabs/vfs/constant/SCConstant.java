@@ -14,4 +14,7 @@ public interface SCConstant {
 	public static final String SQL_DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
 	public static final String SOLR_DATETIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
 	public static final String EXTRACTOR_DATETIME_FORMAT = "EEE, dd MMM yyyy HH:mm:ss a (z)";
+
+	// FileContent attribute holding the provider's ETag or change key, where the provider has one
+	public static final String ETAG_ATTRIBUTE = "etag";
 }
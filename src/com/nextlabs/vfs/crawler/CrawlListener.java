@@ -0,0 +1,33 @@
+package com.nextlabs.vfs.crawler;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileType;
+
+/**
+ * Receives the results of a {@link RepositoryCrawler} as they are found.
+ * 
+ * Folders are listed in parallel, so both methods are called from many crawler
+ * threads at once and must be thread safe. They should also return quickly:
+ * time spent here is time a crawler thread is not listing folders.
+ */
+public interface CrawlListener {
+
+	/**
+	 * Called for every file and folder accepted by the crawler's FileSelector.
+	 * 
+	 * @param file  The file or folder found.
+	 * @param type  Its type, already fetched by the crawler.
+	 * @param depth Depth below the crawl root, which is at depth 0.
+	 */
+	void onFile(FileObject file, FileType type, int depth);
+
+	/**
+	 * Called when a file or folder could not be read. The crawl carries on with
+	 * the rest of the tree.
+	 * 
+	 * @param file The file or folder that failed.
+	 * @param e    The cause.
+	 */
+	default void onError(FileObject file, Exception e) {
+	}
+}
@@ -0,0 +1,325 @@
+package com.nextlabs.vfs.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.NameScope;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.nextlabs.vfs.constant.SCConstant;
+
+/**
+ * Crawls a repository tree and reports only what changed since the previous
+ * crawl of the same root.
+ *
+ * After every complete crawl the path, size, last-modified time and ETag (where
+ * the provider has one, see {@link SCConstant#ETAG_ATTRIBUTE}) of each file are
+ * written to a manifest in the manifest directory, one per crawl root. The next
+ * crawl compares against it and calls the {@link ChangeListener} for files that
+ * were added, changed or deleted; unchanged files are only counted. Only
+ * metadata is fetched, the content of a file is never opened here.
+ *
+ * Files and folders that fail to be read keep their previous manifest entries,
+ * so an unreachable folder is not reported as deleted. The depth limit and
+ * FileSelector of the underlying {@link RepositoryCrawler} apply, and should be
+ * the same from one crawl of a root to the next.
+ */
+public class IncrementalCrawler {
+	private static final Logger log = LogManager.getLogger(IncrementalCrawler.class);
+
+	private static final int MANIFEST_MAGIC = 0x4E584D46; // "NXMF"
+	private static final int MANIFEST_VERSION = 1;
+
+	private final RepositoryCrawler crawler;
+	private final File manifestDirectory;
+
+	/**
+	 * Receives the differences found by an incremental crawl. Called from many
+	 * crawler threads at once, see {@link CrawlListener}.
+	 */
+	public interface ChangeListener {
+
+		void onAdded(FileObject file);
+
+		void onChanged(FileObject file);
+
+		/**
+		 * @param uri URI of a file present in the previous crawl and gone from this
+		 *            one.
+		 */
+		void onDeleted(String uri);
+
+		default void onError(FileObject file, Exception e) {
+		}
+	}
+
+	/**
+	 * Counts of an incremental crawl.
+	 */
+	public static final class Summary {
+		private final long added;
+		private final long changed;
+		private final long deleted;
+		private final long unchanged;
+
+		Summary(long added, long changed, long deleted, long unchanged) {
+			this.added = added;
+			this.changed = changed;
+			this.deleted = deleted;
+			this.unchanged = unchanged;
+		}
+
+		public long getAdded() {
+			return added;
+		}
+
+		public long getChanged() {
+			return changed;
+		}
+
+		public long getDeleted() {
+			return deleted;
+		}
+
+		public long getUnchanged() {
+			return unchanged;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("added=%d, changed=%d, deleted=%d, unchanged=%d", added, changed, deleted, unchanged);
+		}
+	}
+
+	private static final class Entry {
+		final long size;
+		final long lastModified;
+		final String etag;
+
+		Entry(long size, long lastModified, String etag) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.etag = etag;
+		}
+
+		boolean sameAs(Entry other) {
+			return size == other.size && lastModified == other.lastModified && Objects.equals(etag, other.etag);
+		}
+	}
+
+	/**
+	 * @param crawler           Crawler used to walk the tree.
+	 * @param manifestDirectory Directory the manifests are kept in. Created if
+	 *                          missing.
+	 */
+	public IncrementalCrawler(RepositoryCrawler crawler, File manifestDirectory) {
+		this.crawler = crawler;
+		this.manifestDirectory = manifestDirectory;
+	}
+
+	public RepositoryCrawler getCrawler() {
+		return crawler;
+	}
+
+	/**
+	 * Crawls the tree under a folder and reports the files that differ from the
+	 * previous crawl of the same folder. The first crawl of a folder reports every
+	 * file as added.
+	 *
+	 * @param rootUri  URI of the folder to start from, in a registered
+	 *                 repository.
+	 * @param listener Receives the differences.
+	 * @return The counts of added, changed, deleted and unchanged files.
+	 * @throws IOException If the root cannot be crawled or the manifest cannot be
+	 *                     written.
+	 */
+	public Summary crawl(String rootUri, final ChangeListener listener) throws IOException {
+		final FileObject root = crawler.getFileSystemManager().resolveFile(rootUri);
+		if (root == null) {
+			throw new FileSystemException("vfs.provider/get-type.error", rootUri);
+		}
+		final File manifestFile = getManifestFile(root);
+		final Map<String, Entry> previous = readManifest(manifestFile);
+		final Map<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+		final Queue<String> failedPaths = new ConcurrentLinkedQueue<String>();
+		final Semaphore permits = crawler.getPermits(root);
+		final AtomicLong added = new AtomicLong();
+		final AtomicLong changed = new AtomicLong();
+		final AtomicLong unchanged = new AtomicLong();
+
+		crawler.crawl(root, new CrawlListener() {
+			@Override
+			public void onFile(FileObject file, FileType type, int depth) {
+				if (type != FileType.FILE) {
+					return;
+				}
+				try {
+					String path = root.getName().getRelativeName(file.getName());
+					Entry entry = RepositoryCrawler.block(permits, () -> readEntry(file));
+					current.put(path, entry);
+					Entry before = previous.get(path);
+					if (before == null) {
+						added.incrementAndGet();
+						listener.onAdded(file);
+					} else if (!before.sameAs(entry)) {
+						changed.incrementAndGet();
+						listener.onChanged(file);
+					} else {
+						unchanged.incrementAndGet();
+					}
+				} catch (Exception e) {
+					onError(file, e);
+				}
+			}
+
+			@Override
+			public void onError(FileObject file, Exception e) {
+				try {
+					failedPaths.add(root.getName().getRelativeName(file.getName()));
+				} catch (FileSystemException ex) {
+					log.warn("Could not resolve " + file + " against " + root, ex);
+				}
+				listener.onError(file, e);
+			}
+		});
+
+		long deleted = 0;
+		for (Map.Entry<String, Entry> before : previous.entrySet()) {
+			String path = before.getKey();
+			if (current.containsKey(path)) {
+				continue;
+			}
+			if (isUnder(path, failedPaths)) {
+				// Could not be read this time, keep what we knew
+				current.put(path, before.getValue());
+				continue;
+			}
+			deleted++;
+			listener.onDeleted(crawler.getFileSystemManager().resolveName(root.getName(), path, NameScope.DESCENDENT).getURI());
+		}
+
+		writeManifest(manifestFile, root.getName().getURI(), current);
+		Summary summary = new Summary(added.get(), changed.get(), deleted, unchanged.get());
+		if (log.isDebugEnabled()) {
+			log.debug("Incremental crawl of " + root + ": " + summary);
+		}
+		return summary;
+	}
+
+	private static Entry readEntry(FileObject file) throws FileSystemException {
+		FileContent content = file.getContent();
+		Object etag = content.getAttribute(SCConstant.ETAG_ATTRIBUTE);
+		return new Entry(content.getSize(), content.getLastModifiedTime(), etag == null ? null : etag.toString());
+	}
+
+	private static boolean isUnder(String path, Queue<String> failedPaths) {
+		for (String failed : failedPaths) {
+			if (path.equals(failed) || ".".equals(failed) || path.startsWith(failed + "/")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private File getManifestFile(FileObject root) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(root.getName().getURI().toLowerCase().getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for (int i = 0; i < 16; i++) {
+				name.append(String.format("%02x", hash[i]));
+			}
+			return new File(manifestDirectory, name.append(".manifest").toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static Map<String, Entry> readManifest(File manifestFile) {
+		Map<String, Entry> entries = new HashMap<String, Entry>();
+		if (!manifestFile.isFile()) {
+			return entries;
+		}
+		try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(manifestFile))))) {
+			if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION) {
+				log.warn("Ignoring manifest " + manifestFile + " written in an unknown format");
+				return entries;
+			}
+			in.readUTF(); // root URI, for whoever reads the file
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				String etag = in.readBoolean() ? in.readUTF() : null;
+				entries.put(path, new Entry(size, lastModified, etag));
+			}
+		} catch (IOException e) {
+			log.warn("Ignoring unreadable manifest " + manifestFile + ", every file will be reported as added", e);
+			entries.clear();
+		}
+		return entries;
+	}
+
+	/*
+	 * Writes to a temporary file next to the manifest and moves it into place, so that a crawl interrupted
+	 * half way never leaves a truncated manifest behind.
+	 */
+	private void writeManifest(File manifestFile, String rootUri, Map<String, Entry> entries) throws IOException {
+		if (!manifestDirectory.isDirectory() && !manifestDirectory.mkdirs()) {
+			throw new IOException("Could not create manifest directory " + manifestDirectory);
+		}
+		File temp = File.createTempFile(manifestFile.getName(), ".tmp", manifestDirectory);
+		try {
+			try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))) {
+				out.writeInt(MANIFEST_MAGIC);
+				out.writeInt(MANIFEST_VERSION);
+				out.writeUTF(rootUri);
+				out.writeInt(entries.size());
+				for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeLong(entry.getValue().size);
+					out.writeLong(entry.getValue().lastModified);
+					out.writeBoolean(entry.getValue().etag != null);
+					if (entry.getValue().etag != null) {
+						out.writeUTF(entry.getValue().etag);
+					}
+				}
+			}
+			try {
+				Files.move(temp.toPath(), manifestFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+}
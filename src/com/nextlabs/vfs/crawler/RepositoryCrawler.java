@@ -0,0 +1,325 @@
+package com.nextlabs.vfs.crawler;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSelectInfo;
+import org.apache.commons.vfs2.FileSelector;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.Selectors;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.nextlabs.vfs.ChildIterator;
+import com.nextlabs.vfs.RepositoryFileSystemManager;
+
+/**
+ * Walks repository trees through a {@link RepositoryFileSystemManager}, listing
+ * folders in parallel on a work-stealing ForkJoinPool.
+ *
+ * Every folder is a task: it lists its children, reports the ones accepted by
+ * the FileSelector to the {@link CrawlListener} and forks a task for each
+ * subfolder, so idle threads steal subtrees from busy ones and a deep or wide
+ * folder never holds up the rest of the crawl.
+ *
+ * Listing a folder or fetching a type is a blocking network call. Each
+ * repository has a semaphore bounding how many of them are in flight at once,
+ * so one crawl cannot flood a file server however large the pool is. A call
+ * that holds a permit runs as a {@link ForkJoinPool.ManagedBlocker}, letting
+ * the pool add a thread while it waits on the network; waiting for a permit
+ * does not, so the pool grows by at most the permits in use.
+ *
+ * A crawler can run any number of crawls, one after the other or at the same
+ * time. Call {@link #close()} when done with it.
+ */
+public class RepositoryCrawler implements AutoCloseable {
+	private static final Logger log = LogManager.getLogger(RepositoryCrawler.class);
+
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 16;
+
+	private final RepositoryFileSystemManager fsMgr;
+	private final ForkJoinPool pool;
+	private final ConcurrentMap<String, Semaphore> repositoryPermits = new ConcurrentHashMap<String, Semaphore>();
+
+	private volatile int maxDepth = Integer.MAX_VALUE;
+	private volatile FileSelector selector = Selectors.SELECT_ALL;
+	private volatile int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+	private static class SelectInfo implements FileSelectInfo {
+		private final FileObject baseFolder;
+		private final FileObject file;
+		private final int depth;
+
+		SelectInfo(FileObject baseFolder, FileObject file, int depth) {
+			this.baseFolder = baseFolder;
+			this.file = file;
+			this.depth = depth;
+		}
+
+		@Override
+		public FileObject getBaseFolder() {
+			return baseFolder;
+		}
+
+		@Override
+		public FileObject getFile() {
+			return file;
+		}
+
+		@Override
+		public int getDepth() {
+			return depth;
+		}
+	}
+
+	/**
+	 * Runs a blocking call, already holding a permit, without starving the pool.
+	 */
+	private static class Blocker<T> implements ForkJoinPool.ManagedBlocker {
+		private final Callable<T> call;
+		private boolean done;
+		private T result;
+		private Exception failure;
+
+		Blocker(Callable<T> call) {
+			this.call = call;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			try {
+				result = call.call();
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (UncheckedIOException e) {
+				// Thrown by ChildIterators
+				failure = e.getCause();
+			} catch (Exception e) {
+				failure = e;
+			} finally {
+				done = true;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return done;
+		}
+	}
+
+	private class FolderTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final FileObject baseFolder;
+		private final FileObject folder;
+		private final int depth;
+		private final Semaphore permits;
+		private final CrawlListener listener;
+		private final AtomicLong found;
+
+		FolderTask(FileObject baseFolder, FileObject folder, int depth, Semaphore permits, CrawlListener listener, AtomicLong found) {
+			this.baseFolder = baseFolder;
+			this.folder = folder;
+			this.depth = depth;
+			this.permits = permits;
+			this.listener = listener;
+			this.found = found;
+		}
+
+		@Override
+		protected void compute() {
+			List<FolderTask> subfolders = new ArrayList<FolderTask>();
+			// Children are handled as the listing pages arrive rather than after the whole folder has been read
+			try (ChildIterator children = block(permits, () -> fsMgr.iterateChildren(folder))) {
+				while (block(permits, children::hasNext)) {
+					FileObject child = children.next();
+					try {
+						FileType type = block(permits, child::getType);
+						SelectInfo info = new SelectInfo(baseFolder, child, depth + 1);
+						if (selector.includeFile(info)) {
+							found.incrementAndGet();
+							listener.onFile(child, type, depth + 1);
+						}
+						if (type.hasChildren() && depth + 1 < maxDepth && selector.traverseDescendents(info)) {
+							FolderTask subfolder = new FolderTask(baseFolder, child, depth + 1, permits, listener, found);
+							subfolder.fork();
+							subfolders.add(subfolder);
+						}
+					} catch (Exception e) {
+						listener.onError(child, e);
+					}
+				}
+			} catch (Exception e) {
+				listener.onError(folder, e);
+			}
+			for (FolderTask subfolder : subfolders) {
+				subfolder.join();
+			}
+		}
+	}
+
+	/**
+	 * Creates a crawler with one worker per available processor.
+	 */
+	public RepositoryCrawler(RepositoryFileSystemManager fsMgr) {
+		this(fsMgr, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param fsMgr       The manager the crawled repositories are registered with.
+	 * @param parallelism Target number of worker threads. The pool adds a
+	 *                    thread for each worker blocked on a network request,
+	 *                    which the per-repository request limits bound.
+	 */
+	public RepositoryCrawler(RepositoryFileSystemManager fsMgr, int parallelism) {
+		this.fsMgr = fsMgr;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @param maxDepth Deepest level reported, the children of the crawl root
+	 *                 being at depth 1. Defaults to no limit.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	public FileSelector getFileSelector() {
+		return selector;
+	}
+
+	/**
+	 * @param selector Chooses which files are reported and which folders are
+	 *                 descended into. Defaults to everything.
+	 */
+	public void setFileSelector(FileSelector selector) {
+		this.selector = selector == null ? Selectors.SELECT_ALL : selector;
+	}
+
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	/**
+	 * @param maxConcurrentRequests Listing and type requests allowed in flight
+	 *                              at once against a single repository, across
+	 *                              all crawls. Applies to repositories not yet
+	 *                              crawled.
+	 */
+	public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+		if (maxConcurrentRequests < 1) {
+			throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+		}
+		this.maxConcurrentRequests = maxConcurrentRequests;
+	}
+
+	/**
+	 * Crawls the tree under a folder, blocking until every accepted file has been
+	 * passed to the listener.
+	 *
+	 * @param rootUri  URI of the folder to start from, in a registered
+	 *                 repository.
+	 * @param listener Receives the files found and any errors.
+	 * @return The number of files and folders passed to the listener.
+	 * @throws FileSystemException If the root cannot be resolved or is not a
+	 *                             folder.
+	 */
+	public long crawl(String rootUri, CrawlListener listener) throws FileSystemException {
+		FileObject root = fsMgr.resolveFile(rootUri);
+		if (root == null) {
+			throw new FileSystemException("vfs.provider/get-type.error", rootUri);
+		}
+		return crawl(root, listener);
+	}
+
+	/**
+	 * @see #crawl(String, CrawlListener)
+	 */
+	public long crawl(FileObject root, CrawlListener listener) throws FileSystemException {
+		Semaphore permits = getPermits(root);
+		FileType type;
+		try {
+			type = block(permits, root::getType);
+		} catch (FileSystemException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new FileSystemException("vfs.provider/get-type.error", e, root);
+		}
+		if (!type.hasChildren()) {
+			throw new FileSystemException("vfs.provider/list-children-not-folder.error", root);
+		}
+		AtomicLong found = new AtomicLong();
+		if (maxDepth > 0) {
+			if (log.isDebugEnabled()) {
+				log.debug("Crawling " + root + " up to depth " + maxDepth);
+			}
+			pool.invoke(new FolderTask(root, root, 0, permits, listener, found));
+		}
+		return found.get();
+	}
+
+	RepositoryFileSystemManager getFileSystemManager() {
+		return fsMgr;
+	}
+
+	/*
+	 * Returns the semaphore bounding the requests in flight against the repository of the given file.
+	 */
+	Semaphore getPermits(FileObject file) {
+		String repoPath = RepositoryFileSystemManager.getRepositoryPath(file.getName().getURI());
+		return getPermits(repoPath == null ? file.getName().getRootURI() : repoPath);
+	}
+
+	private Semaphore getPermits(String repoPath) {
+		Semaphore permits = repositoryPermits.get(repoPath);
+		if (permits == null) {
+			Semaphore created = new Semaphore(maxConcurrentRequests);
+			permits = repositoryPermits.putIfAbsent(repoPath, created);
+			if (permits == null) {
+				permits = created;
+			}
+		}
+		return permits;
+	}
+
+	/*
+	 * Runs a blocking request against a repository, holding one of its permits. The permit is taken before the
+	 * request is handed to the pool as blocked, so that only requests actually in flight make the pool add threads.
+	 */
+	static <T> T block(Semaphore permits, Callable<T> call) throws Exception {
+		Blocker<T> blocker = new Blocker<T>(call);
+		permits.acquire();
+		try {
+			ForkJoinPool.managedBlock(blocker);
+		} finally {
+			permits.release();
+		}
+		if (blocker.failure != null) {
+			throw blocker.failure;
+		}
+		return blocker.result;
+	}
+
+	/**
+	 * Stops the worker threads once running crawls have finished.
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,45 @@
+package com.nextlabs.vfs.dto;
+
+public class CacheSettings {
+	
+	int maxEntries;
+	long timeToLive;
+	boolean weakReferences;
+	
+	/*
+	 * maxEntries  - number of FileObjects kept per file system before the least recently used one is evicted
+	 * timeToLive  - milliseconds a cached FileObject is trusted before its type, size, last-modified and children are
+	 *               fetched again, 0 to keep them until the file is changed through this library
+	 * weakReferences - let the garbage collector drop cached FileObjects nobody else holds on to
+	 */
+	public CacheSettings(int maxEntries, long timeToLive, boolean weakReferences) {
+		this.maxEntries = maxEntries;
+		this.timeToLive = timeToLive;
+		this.weakReferences = weakReferences;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	public void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	public boolean isWeakReferences() {
+		return weakReferences;
+	}
+
+	public void setWeakReferences(boolean weakReferences) {
+		this.weakReferences = weakReferences;
+	}
+
+}
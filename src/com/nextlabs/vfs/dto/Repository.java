@@ -7,12 +7,18 @@ public class Repository {
 	String path;
 	RepositoryType type;
 	RepositoryCredentials creds;
+	CacheSettings cacheSettings;
 	
 	public Repository(String repoPath, RepositoryType repoType, RepositoryCredentials creds) {
 		this.path = repoPath;
 		this.type = repoType;
 		this.creds = creds;
 	}
+	
+	public Repository(String repoPath, RepositoryType repoType, RepositoryCredentials creds, CacheSettings cacheSettings) {
+		this(repoPath, repoType, creds);
+		this.cacheSettings = cacheSettings;
+	}
 
 	public String getPath() {
 		return path;
@@ -38,4 +44,12 @@ public class Repository {
 		this.creds = creds;
 	}
 
+	public CacheSettings getCacheSettings() {
+		return cacheSettings;
+	}
+
+	public void setCacheSettings(CacheSettings cacheSettings) {
+		this.cacheSettings = cacheSettings;
+	}
+
 }
@@ -0,0 +1,351 @@
+package com.nextlabs.vfs.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.nextlabs.vfs.AsyncFileSystemManager;
+
+/**
+ * Reads a large file through several handles at once and hands the bytes back
+ * in order, as an ordinary InputStream.
+ *
+ * The file is split into chunks. Each worker opens a {@link RangeReader} of its
+ * own and fetches the next chunk nobody has claimed yet, so that as many reads
+ * are in flight as there are workers instead of one. On a high-latency link
+ * this multiplies throughput by about the parallelism. Workers stay at most
+ * twice the parallelism chunks ahead of the reader, which bounds the memory
+ * held to that many chunks. Buffers of chunks the reader is done with are
+ * handed back to the workers rather than allocated again.
+ *
+ * A failed chunk fails the stream when the reader gets to it. Closing the
+ * stream stops the workers and closes their readers.
+ */
+public class ParallelRangeInputStream extends InputStream {
+	private static final Logger log = LogManager.getLogger(ParallelRangeInputStream.class);
+
+	private final RangeReader.Opener opener;
+	private final long length;
+	private final int chunkSize;
+	private final int parallelism;
+	private final long chunkCount;
+	private final Executor executor;
+	private final ConcurrentMap<Long, CompletableFuture<byte[]>> chunks = new ConcurrentHashMap<Long, CompletableFuture<byte[]>>();
+	private final AtomicLong nextChunk = new AtomicLong();
+	// Chunks the workers may fetch ahead of the reader
+	private final Semaphore ahead;
+	// Full-size chunk buffers the reader is done with
+	private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<byte[]>();
+	private volatile Throwable failure;
+	// First chunk that failed; the ones before it were claimed by then and are still read
+	private volatile long failedChunk = Long.MAX_VALUE;
+	private volatile boolean closed;
+
+	private boolean started;
+	private long position;
+	private long currentIndex = -1;
+	private byte[] current;
+
+	/**
+	 * Runs the workers on {@link AsyncFileSystemManager#getSharedExecutor()}.
+	 *
+	 * @param opener      Opens a new handle on the file, once per worker.
+	 * @param length      Length of the file.
+	 * @param chunkSize   Bytes fetched per read.
+	 * @param parallelism Number of workers, and of handles open at once.
+	 */
+	public ParallelRangeInputStream(RangeReader.Opener opener, long length, int chunkSize, int parallelism) {
+		this(opener, length, chunkSize, parallelism, AsyncFileSystemManager.getSharedExecutor());
+	}
+
+	public ParallelRangeInputStream(RangeReader.Opener opener, long length, int chunkSize, int parallelism, Executor executor) {
+		if (chunkSize < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("chunkSize and parallelism must be at least 1");
+		}
+		this.opener = opener;
+		this.length = length;
+		this.chunkSize = chunkSize;
+		this.parallelism = parallelism;
+		this.chunkCount = (length + chunkSize - 1) / chunkSize;
+		this.executor = executor;
+		this.ahead = new Semaphore(parallelism * 2);
+	}
+
+	private CompletableFuture<byte[]> chunk(long index) {
+		CompletableFuture<byte[]> future = chunks.get(index);
+		if (future == null) {
+			CompletableFuture<byte[]> created = new CompletableFuture<byte[]>();
+			future = chunks.putIfAbsent(index, created);
+			if (future == null) {
+				future = created;
+			}
+		}
+		return future;
+	}
+
+	private int chunkLength(long index) {
+		return (int) Math.min(chunkSize, length - index * chunkSize);
+	}
+
+	private final class Worker implements Runnable {
+		@Override
+		public void run() {
+			RangeReader reader = null;
+			try {
+				while (!closed && failure == null) {
+					ahead.acquire();
+					long index = nextChunk.getAndIncrement();
+					if (closed || index >= chunkCount) {
+						break;
+					}
+					CompletableFuture<byte[]> future = chunk(index);
+					try {
+						if (reader == null) {
+							reader = opener.open();
+						}
+						byte[] buffer = takeBuffer(chunkLength(index));
+						readFully(reader, index * chunkSize, buffer, buffer.length);
+						future.complete(buffer);
+					} catch (Throwable e) {
+						fail(index, e);
+					}
+				}
+			} catch (InterruptedException e) {
+				fail(nextChunk.get(), e);
+				Thread.currentThread().interrupt();
+			} finally {
+				closeQuietly(reader);
+			}
+		}
+	}
+
+	private byte[] takeBuffer(int length) {
+		if (length == chunkSize) {
+			byte[] free = freeBuffers.poll();
+			if (free != null) {
+				return free;
+			}
+		}
+		return new byte[length];
+	}
+
+	/*
+	 * Fails the chunk at the index and every one after it that is waited on or fetched so far; the reader checks for
+	 * a failure before waiting on a new one.
+	 */
+	private synchronized void fail(long index, Throwable e) {
+		if (index < failedChunk) {
+			failure = e;
+			failedChunk = index;
+		}
+		for (Map.Entry<Long, CompletableFuture<byte[]>> chunk : chunks.entrySet()) {
+			if (chunk.getKey() >= index) {
+				chunk.getValue().completeExceptionally(e);
+			}
+		}
+	}
+
+	private static void readFully(RangeReader reader, long position, byte[] buffer, int length) throws IOException {
+		int done = 0;
+		while (done < length) {
+			int read = reader.read(position + done, buffer, done, length - done);
+			if (read < 0) {
+				throw new IOException("Unexpected end of file at offset " + (position + done));
+			}
+			done += read;
+		}
+	}
+
+	private static void closeQuietly(RangeReader reader) {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				log.debug(e.getMessage(), e);
+			}
+		}
+	}
+
+	/*
+	 * Makes the chunk holding the current position the current chunk, waiting for it if needed.
+	 */
+	private void ensureChunk() throws IOException {
+		long index = position / chunkSize;
+		if (index == currentIndex) {
+			if (current == null) {
+				// The wait for this chunk failed before
+				Throwable failed = failure;
+				throw failed != null ? toIOException(failed) : new IOException("Chunk " + index + " not read");
+			}
+			return;
+		}
+		if (!started) {
+			started = true;
+			for (long i = 0; i < Math.min(parallelism, chunkCount); i++) {
+				executor.execute(new Worker());
+			}
+		}
+		while (currentIndex < index) {
+			if (currentIndex >= 0) {
+				if (current != null && current.length == chunkSize) {
+					freeBuffers.offer(current);
+				}
+				current = null;
+				ahead.release();
+			}
+			currentIndex++;
+			// Checked once the future is in the map, so that a failure after the check completes it
+			CompletableFuture<byte[]> future = chunk(currentIndex);
+			if (currentIndex >= failedChunk) {
+				throw toIOException(failure);
+			}
+			try {
+				current = future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				throw toIOException(e.getCause());
+			} finally {
+				chunks.remove(currentIndex);
+			}
+		}
+	}
+
+	private static IOException toIOException(Throwable e) {
+		return e instanceof IOException ? (IOException) e : new IOException(e);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (position >= length) {
+			return -1;
+		}
+		ensureChunk();
+		return current[(int) (position++ - currentIndex * chunkSize)] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (position >= length) {
+			return -1;
+		}
+		ensureChunk();
+		int offset = (int) (position - currentIndex * chunkSize);
+		int n = Math.min(len, current.length - offset);
+		System.arraycopy(current, offset, b, off, n);
+		position += n;
+		return n;
+	}
+
+	/*
+	 * Skipped chunks are still fetched, as the workers run ahead anyway, but not copied
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		long skipped = Math.max(0, Math.min(n, length - position));
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (closed || current == null || position >= length || position / chunkSize != currentIndex) {
+			return 0;
+		}
+		return (int) (current.length - (position - currentIndex * chunkSize));
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			// Wakes the workers waiting for room ahead of the reader
+			ahead.release(parallelism);
+			chunks.clear();
+			freeBuffers.clear();
+			current = null;
+		}
+	}
+
+	/**
+	 * Copies a file into a FileChannel with the same parallel reads, each chunk
+	 * written at its own offset as soon as it arrives.
+	 *
+	 * @param target         Channel written with positional writes, which leaves
+	 *                       its own position untouched.
+	 * @param targetPosition Offset in the channel the file starts at.
+	 * @return The number of bytes copied.
+	 */
+	public static long copy(final RangeReader.Opener opener, final long length, final int chunkSize, int parallelism, final FileChannel target, final long targetPosition) throws IOException {
+		if (chunkSize < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("chunkSize and parallelism must be at least 1");
+		}
+		final long count = (length + chunkSize - 1) / chunkSize;
+		final AtomicLong next = new AtomicLong();
+		final Executor executor = AsyncFileSystemManager.getSharedExecutor();
+		List<CompletableFuture<Void>> workers = new ArrayList<CompletableFuture<Void>>();
+		for (long i = 0; i < Math.min(parallelism, count); i++) {
+			final CompletableFuture<Void> worker = new CompletableFuture<Void>();
+			workers.add(worker);
+			executor.execute(() -> {
+				try (RangeReader reader = opener.open()) {
+					byte[] buffer = new byte[chunkSize];
+					for (long index = next.getAndIncrement(); index < count; index = next.getAndIncrement()) {
+						int chunk = (int) Math.min(chunkSize, length - index * chunkSize);
+						readFully(reader, index * chunkSize, buffer, chunk);
+						ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, chunk);
+						long at = targetPosition + index * chunkSize;
+						while (bytes.hasRemaining()) {
+							at += target.write(bytes, at);
+						}
+					}
+					worker.complete(null);
+				} catch (Throwable e) {
+					// Stops the other workers at their next chunk
+					next.set(count);
+					worker.completeExceptionally(e);
+				}
+			});
+		}
+		try {
+			CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).get();
+		} catch (InterruptedException e) {
+			next.set(count);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			throw toIOException(e.getCause());
+		}
+		return length;
+	}
+}
@@ -0,0 +1,274 @@
+package com.nextlabs.vfs.io;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.vfs2.provider.AbstractRandomAccessContent;
+import org.apache.commons.vfs2.util.RandomAccessMode;
+
+/**
+ * Read-only random access to a remote file through a {@link RangeReader}, for
+ * stores that can only fetch byte ranges, such as Azure Blob and File storage.
+ *
+ * The file is read in blocks of {@code blockSize} bytes, the least recently
+ * used of which are kept up to {@code cacheBlocks}. A read of a block not held
+ * fetches that block alone, so that reading the header or the trailer of a
+ * large file costs one small request. Misses that follow on from the previous
+ * fetch are taken as a sequential read and fetch twice as many blocks as that
+ * one did in a single request, up to {@code maxReadAhead} blocks.
+ *
+ * The length is taken when the content is opened. Writes are not supported.
+ */
+public class RangeRandomAccessContent extends AbstractRandomAccessContent {
+	private final RangeReader reader;
+	private final long length;
+	private final int blockSize;
+	private final int maxReadAhead;
+	private final Map<Long, byte[]> blocks;
+	private final InputStream input;
+	private final DataInputStream data;
+	private boolean closed;
+	private long pointer;
+	// Block after the last one fetched, and how many blocks that fetch took
+	private long nextBlock = -1;
+	private int readAhead;
+
+	/**
+	 * @param reader       Reader on the file, closed with this content.
+	 * @param length       Length of the file.
+	 * @param blockSize    Bytes per cached block, and the least fetched at once.
+	 * @param cacheBlocks  Number of blocks kept.
+	 * @param maxReadAhead Most blocks fetched in one request when reading
+	 *                     sequentially. 1 fetches one block at a time.
+	 */
+	public RangeRandomAccessContent(RangeReader reader, long length, int blockSize, final int cacheBlocks, int maxReadAhead) {
+		super(RandomAccessMode.READ);
+		if (blockSize < 1 || cacheBlocks < 1) {
+			throw new IllegalArgumentException("blockSize and cacheBlocks must be at least 1");
+		}
+		this.reader = reader;
+		this.length = length;
+		this.blockSize = blockSize;
+		this.maxReadAhead = Math.max(1, Math.min(maxReadAhead, cacheBlocks));
+		this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+				return size() > cacheBlocks;
+			}
+		};
+		this.input = new InputStream() {
+			@Override
+			public int available() {
+				return (int) Math.min(Integer.MAX_VALUE, Math.max(0, RangeRandomAccessContent.this.length - pointer));
+			}
+
+			@Override
+			public void close() throws IOException {
+				RangeRandomAccessContent.this.close();
+			}
+
+			@Override
+			public int read() throws IOException {
+				return readCached();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return readCached(b, off, len);
+			}
+
+			@Override
+			public long skip(long n) {
+				long skipped = Math.max(0, Math.min(n, RangeRandomAccessContent.this.length - pointer));
+				pointer += skipped;
+				return skipped;
+			}
+		};
+		this.data = new DataInputStream(input);
+	}
+
+	private int readCached() throws IOException {
+		if (pointer >= length) {
+			return -1;
+		}
+		byte[] block = block(pointer / blockSize);
+		return block[(int) (pointer++ % blockSize)] & 0xff;
+	}
+
+	private int readCached(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (pointer >= length) {
+			return -1;
+		}
+		byte[] block = block(pointer / blockSize);
+		int offset = (int) (pointer % blockSize);
+		int n = Math.min(len, block.length - offset);
+		System.arraycopy(block, offset, b, off, n);
+		pointer += n;
+		return n;
+	}
+
+	/*
+	 * The block at the index, fetched along with the blocks after it when reading sequentially
+	 */
+	private byte[] block(long index) throws IOException {
+		if (closed) {
+			throw new IOException("Content closed");
+		}
+		byte[] block = blocks.get(index);
+		if (block != null) {
+			return block;
+		}
+		readAhead = index == nextBlock ? Math.min(readAhead * 2, maxReadAhead) : 1;
+		long blockCount = (length + blockSize - 1) / blockSize;
+		int count = 1;
+		while (count < readAhead && index + count < blockCount && !blocks.containsKey(index + count)) {
+			count++;
+		}
+		long start = index * blockSize;
+		byte[] fetched = new byte[(int) Math.min((long) count * blockSize, length - start)];
+		int done = 0;
+		while (done < fetched.length) {
+			int read = reader.read(start + done, fetched, done, fetched.length - done);
+			if (read < 0) {
+				throw new IOException("Unexpected end of file at offset " + (start + done));
+			}
+			done += read;
+		}
+		if (count == 1) {
+			block = fetched;
+			blocks.put(index, block);
+		} else {
+			for (int i = 0; i < count; i++) {
+				int from = i * blockSize;
+				byte[] split = Arrays.copyOfRange(fetched, from, Math.min(from + blockSize, fetched.length));
+				blocks.put(index + i, split);
+				if (i == 0) {
+					block = split;
+				}
+			}
+		}
+		nextBlock = index + count;
+		return block;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			blocks.clear();
+			reader.close();
+		}
+	}
+
+	@Override
+	public long getFilePointer() {
+		return pointer;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return input;
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public void seek(long pos) throws IOException {
+		if (pos < 0) {
+			throw new IOException("Negative seek offset");
+		}
+		pointer = pos;
+	}
+
+	@Override
+	public void setLength(long newLength) throws IOException {
+		throw new IOException("Read-only content");
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return data.readBoolean();
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return data.readByte();
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return data.readChar();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return data.readDouble();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return data.readFloat();
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		data.readFully(b);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		data.readFully(b, off, len);
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return data.readInt();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return data.readLong();
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return data.readShort();
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return data.readUnsignedByte();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return data.readUnsignedShort();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		return data.readUTF();
+	}
+
+	@Override
+	public int skipBytes(int n) {
+		if (n <= 0) {
+			return 0;
+		}
+		int skipped = (int) Math.max(0, Math.min(n, length - pointer));
+		pointer += skipped;
+		return skipped;
+	}
+}
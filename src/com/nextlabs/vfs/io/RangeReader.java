@@ -0,0 +1,27 @@
+package com.nextlabs.vfs.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads byte ranges of one file at arbitrary offsets, through a handle of its
+ * own. {@link ParallelRangeInputStream} opens one reader per worker, so that a
+ * reader is only ever used by one thread at a time.
+ */
+public interface RangeReader extends Closeable {
+
+	/**
+	 * Reads up to {@code length} bytes of the file starting at {@code position}.
+	 *
+	 * @return The number of bytes read, which may be less than asked for, or -1
+	 *         at the end of the file.
+	 */
+	int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+	/**
+	 * Opens a new reader on the file.
+	 */
+	interface Opener {
+		RangeReader open() throws IOException;
+	}
+}
@@ -0,0 +1,523 @@
+package com.nextlabs.vfs.smb;
+
+import java.net.MalformedURLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.NameScope;
+import org.apache.commons.vfs2.util.FileObjectUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.nextlabs.vfs.AsyncFileSystemManager;
+import com.nextlabs.vfs.crawler.CrawlListener;
+import com.nextlabs.vfs.crawler.IncrementalCrawler;
+import com.nextlabs.vfs.crawler.RepositoryCrawler;
+
+import jcifs.CIFSException;
+import jcifs.FileNotifyInformation;
+import jcifs.SmbWatchHandle;
+import jcifs.smb.SmbFile;
+
+/**
+ * Watches an SMB folder and the whole tree below it for changes, through SMB2
+ * CHANGE_NOTIFY, and reports them to a {@link Listener}.
+ * <p>
+ * Notifications arriving close together are coalesced first: a file is
+ * reported once per batch however many times it was written, a file created
+ * and deleted again within a batch is not reported at all, and a rename is
+ * reported as such. A batch is published once no notification has arrived for
+ * the coalesce delay (see
+ * {@link SmbFileSystemConfigBuilder#setWatchCoalesceDelay}), or after ten times
+ * that delay under a steady stream of changes.
+ * <p>
+ * When the server drops notifications because too many changes happened at
+ * once, or when the watch has to be set up again after a disconnect, the
+ * changes in between are unknown. The listener is then told to re-list the
+ * watched folder through {@link Listener#onOverflow}; the events of that batch
+ * are dropped as the re-list covers them. So is a batch with a change that
+ * could not be resolved or that the listener failed on, once the other changes
+ * have been reported. The watch is set up again on its own, waiting up to a
+ * minute between attempts while the server is unreachable or keeps cancelling
+ * it.
+ * <p>
+ * A folder deleted, renamed or moved into the tree is reported alone, not the
+ * files under it. Each watcher keeps one handle open on the server and one
+ * request outstanding, and runs on
+ * {@link AsyncFileSystemManager#getSharedExecutor()} until closed.
+ */
+public class SmbChangeWatcher implements AutoCloseable {
+	private static final Logger log = LogManager.getLogger(SmbChangeWatcher.class);
+
+	private static final int COMPLETION_FILTER = FileNotifyInformation.FILE_NOTIFY_CHANGE_FILE_NAME | FileNotifyInformation.FILE_NOTIFY_CHANGE_DIR_NAME
+			| FileNotifyInformation.FILE_NOTIFY_CHANGE_SIZE | FileNotifyInformation.FILE_NOTIFY_CHANGE_LAST_WRITE;
+	private static final long MIN_RETRY_DELAY = 1000L;
+	private static final long MAX_RETRY_DELAY = 60000L;
+
+	/**
+	 * Receives the changes seen by a watcher. Changes are published from one
+	 * thread, a batch after the other.
+	 */
+	public interface Listener {
+
+		void onAdded(FileObject file);
+
+		void onModified(FileObject file);
+
+		/**
+		 * @param uri URI of the file or folder that was deleted.
+		 */
+		void onDeleted(String uri);
+
+		/**
+		 * Called for a file or folder renamed or moved within the watched tree. By
+		 * default reported as a deletion and an addition.
+		 *
+		 * @param oldUri URI the file had before.
+		 * @param file   The file under its new name.
+		 */
+		default void onRenamed(String oldUri, FileObject file) {
+			onDeleted(oldUri);
+			onAdded(file);
+		}
+
+		/**
+		 * Called when changes may have been missed. Everything under the folder
+		 * should be listed again, for example by an {@link IncrementalCrawler}.
+		 *
+		 * @param folder The watched folder.
+		 */
+		void onOverflow(FileObject folder);
+
+		/**
+		 * Called when the watch failed and is about to be set up again.
+		 */
+		default void onError(Exception e) {
+		}
+	}
+
+	private enum Kind {
+		ADDED, MODIFIED, DELETED, RENAMED
+	}
+
+	private static final class Change {
+		final Kind kind;
+		// Path the file was renamed from, for RENAMED
+		final String from;
+
+		Change(Kind kind, String from) {
+			this.kind = kind;
+			this.from = from;
+		}
+	}
+
+	private final FileObject folder;
+	private final SmbFile watched;
+	private final Listener listener;
+	private final long coalesceDelay;
+
+	private final Object lock = new Object();
+	// Changes of the current batch by path relative to the folder, in the order first seen
+	private final Map<String, Change> pending = new LinkedHashMap<String, Change>();
+	private boolean overflow;
+	private long firstEvent;
+	private long lastEvent;
+	private volatile boolean closed;
+	private volatile SmbWatchHandle handle;
+
+	/**
+	 * Starts watching a folder of an SMB repository.
+	 *
+	 * @param folder   The folder, as resolved through the file system manager.
+	 *                 Files reported are resolved against it.
+	 * @param listener Receives the changes.
+	 * @return The running watcher, to be closed once no longer needed.
+	 * @throws FileSystemException If the file is not an SMB folder.
+	 */
+	public static SmbChangeWatcher watch(FileObject folder, Listener listener) throws FileSystemException {
+		FileObject target = FileObjectUtils.getAbstractFileObject(folder);
+		if (!(target instanceof SmbFileObject)) {
+			throw new FileSystemException("vfs.provider/list-children-not-folder.error", folder);
+		}
+		if (!folder.isFolder()) {
+			throw new FileSystemException("vfs.provider/list-children-not-folder.error", folder);
+		}
+		SmbFileSystem fileSystem = (SmbFileSystem) ((SmbFileObject) target).getFileSystem();
+		String uri = ((SmbFileName) folder.getName()).getUriWithoutAuth();
+		try {
+			SmbFile watched = new SmbFile(uri.endsWith("/") ? uri : uri + "/", fileSystem.getCifsContext());
+			SmbChangeWatcher watcher = new SmbChangeWatcher(folder, watched, listener, fileSystem.getWatchCoalesceDelay());
+			watcher.start();
+			return watcher;
+		} catch (MalformedURLException e) {
+			throw new FileSystemException("vfs.provider/get-type.error", e, folder);
+		}
+	}
+
+	SmbChangeWatcher(FileObject folder, SmbFile watched, Listener listener, long coalesceDelay) {
+		this.folder = folder;
+		this.watched = watched;
+		this.listener = listener;
+		this.coalesceDelay = Math.max(0, coalesceDelay);
+	}
+
+	public FileObject getFolder() {
+		return folder;
+	}
+
+	private void start() {
+		AsyncFileSystemManager.getSharedExecutor().execute(this::watchLoop);
+		AsyncFileSystemManager.getSharedExecutor().execute(this::publishLoop);
+	}
+
+	/*
+	 * Keeps one CHANGE_NOTIFY outstanding, subscribing again whenever the handle breaks
+	 */
+	private void watchLoop() {
+		long retryDelay = MIN_RETRY_DELAY;
+		boolean resubscribed = false;
+		while (!closed) {
+			boolean cancelled = false;
+			try (SmbWatchHandle opened = watched.watch(COMPLETION_FILTER, true)) {
+				handle = opened;
+				if (resubscribed) {
+					// Whatever happened while there was no watch is unknown
+					signalOverflow();
+				}
+				while (!closed) {
+					List<FileNotifyInformation> events = opened.watch();
+					if (events == null) {
+						// Cancelled, by close() or by the server
+						cancelled = true;
+						break;
+					}
+					// Only a watch that delivers counts as working, not one the server keeps cancelling
+					retryDelay = MIN_RETRY_DELAY;
+					if (events.isEmpty()) {
+						// STATUS_NOTIFY_ENUM_DIR: the server ran out of room for the changes
+						signalOverflow();
+					} else {
+						record(events);
+					}
+				}
+			} catch (CIFSException | RuntimeException e) {
+				if (closed) {
+					break;
+				}
+				log.warn("Watch of " + folder + " failed, subscribing again in " + retryDelay + " ms", e);
+				listener.onError(e);
+			} finally {
+				handle = null;
+			}
+			if (closed) {
+				break;
+			}
+			if (cancelled && log.isDebugEnabled()) {
+				log.debug("Watch of " + folder + " cancelled by the server, subscribing again in " + retryDelay + " ms");
+			}
+			if (!sleep(retryDelay)) {
+				break;
+			}
+			retryDelay = Math.min(MAX_RETRY_DELAY, retryDelay * 2);
+			resubscribed = true;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Stopped watching " + folder);
+		}
+	}
+
+	private boolean sleep(long millis) {
+		synchronized (lock) {
+			long until = System.currentTimeMillis() + millis;
+			try {
+				for (long left = millis; left > 0 && !closed; left = until - System.currentTimeMillis()) {
+					lock.wait(left);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return !closed;
+	}
+
+	private void signalOverflow() {
+		synchronized (lock) {
+			overflow = true;
+			touch();
+		}
+	}
+
+	/*
+	 * Merges notifications into the pending batch
+	 */
+	void record(List<FileNotifyInformation> events) {
+		synchronized (lock) {
+			String renamedFrom = null;
+			for (FileNotifyInformation event : events) {
+				String path = event.getFileName().replace('\\', '/');
+				switch (event.getAction()) {
+				case FileNotifyInformation.FILE_ACTION_ADDED:
+					added(path);
+					break;
+				case FileNotifyInformation.FILE_ACTION_REMOVED:
+				case FileNotifyInformation.FILE_ACTION_REMOVED_BY_DELETE:
+					removed(path);
+					break;
+				case FileNotifyInformation.FILE_ACTION_MODIFIED:
+					modified(path);
+					break;
+				case FileNotifyInformation.FILE_ACTION_RENAMED_OLD_NAME:
+					renamedFrom = path;
+					break;
+				case FileNotifyInformation.FILE_ACTION_RENAMED_NEW_NAME:
+					if (renamedFrom == null) {
+						added(path);
+					} else {
+						renamed(renamedFrom, path);
+						renamedFrom = null;
+					}
+					break;
+				default:
+					// Stream changes, not asked for
+					break;
+				}
+			}
+			if (renamedFrom != null) {
+				// Moved out of the tree
+				removed(renamedFrom);
+			}
+			touch();
+		}
+	}
+
+	private void added(String path) {
+		Change before = pending.get(path);
+		pending.put(path, new Change(before == null || before.kind == Kind.ADDED ? Kind.ADDED : Kind.MODIFIED, null));
+	}
+
+	private void modified(String path) {
+		if (!pending.containsKey(path)) {
+			pending.put(path, new Change(Kind.MODIFIED, null));
+		}
+	}
+
+	private void removed(String path) {
+		Change before = pending.remove(path);
+		if (before == null || before.kind == Kind.MODIFIED || before.kind == Kind.DELETED) {
+			pending.put(path, new Change(Kind.DELETED, null));
+		} else if (before.kind == Kind.RENAMED) {
+			pending.put(before.from, new Change(Kind.DELETED, null));
+		}
+		// Added within the batch and gone again: nothing to report
+	}
+
+	private void renamed(String from, String to) {
+		Change before = pending.remove(from);
+		if (before != null && before.kind == Kind.ADDED) {
+			pending.put(to, before);
+		} else if (before != null && before.kind == Kind.RENAMED) {
+			pending.put(to, before);
+		} else {
+			pending.put(to, new Change(Kind.RENAMED, from));
+		}
+	}
+
+	private void touch() {
+		long now = System.currentTimeMillis();
+		if (firstEvent == 0) {
+			firstEvent = now;
+		}
+		lastEvent = now;
+		lock.notifyAll();
+	}
+
+	/*
+	 * Publishes the pending batch once the notifications quiet down
+	 */
+	private void publishLoop() {
+		while (true) {
+			synchronized (lock) {
+				try {
+					while (pending.isEmpty() && !overflow && !closed) {
+						lock.wait();
+					}
+					if (closed) {
+						return;
+					}
+					long now = System.currentTimeMillis();
+					while (!closed && now - lastEvent < coalesceDelay && now - firstEvent < coalesceDelay * 10) {
+						lock.wait(Math.min(coalesceDelay - (now - lastEvent), coalesceDelay * 10 - (now - firstEvent)));
+						now = System.currentTimeMillis();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (closed) {
+					return;
+				}
+			}
+			publishPending();
+		}
+	}
+
+	/*
+	 * Publishes the pending batch, or the overflow, and starts a new one
+	 */
+	void publishPending() {
+		Map<String, Change> batch;
+		boolean overflowed;
+		synchronized (lock) {
+			batch = new LinkedHashMap<String, Change>(pending);
+			overflowed = overflow;
+			pending.clear();
+			overflow = false;
+			firstEvent = 0;
+		}
+		try {
+			if (overflowed || !publish(batch)) {
+				folder.refresh();
+				listener.onOverflow(folder);
+			}
+		} catch (Exception e) {
+			log.warn("Listener of the watch of " + folder + " failed", e);
+		}
+	}
+
+	/*
+	 * Reports every change of the batch, carrying on past those that fail. False when one failed, so that the
+	 * folder is listed again rather than the change lost.
+	 */
+	private boolean publish(Map<String, Change> batch) {
+		boolean published = true;
+		for (Map.Entry<String, Change> entry : batch.entrySet()) {
+			try {
+				publish(entry.getKey(), entry.getValue());
+			} catch (Exception e) {
+				log.warn("Could not publish the change of " + entry.getKey() + " under " + folder + ", listing it again", e);
+				published = false;
+			}
+		}
+		return published;
+	}
+
+	private void publish(String path, Change change) throws FileSystemException {
+		FileObject file = folder.resolveFile(path, NameScope.DESCENDENT);
+		// Forgets what the cache knew of the file, and of the children of its folder if the names changed
+		file.refresh();
+		if (change.kind != Kind.MODIFIED) {
+			file.getParent().refresh();
+		}
+		switch (change.kind) {
+		case ADDED:
+			listener.onAdded(file);
+			break;
+		case MODIFIED:
+			listener.onModified(file);
+			break;
+		case DELETED:
+			listener.onDeleted(file.getName().getURI());
+			break;
+		case RENAMED:
+			FileObject old = folder.resolveFile(change.from, NameScope.DESCENDENT);
+			old.refresh();
+			if (!old.getParent().equals(file.getParent())) {
+				old.getParent().refresh();
+			}
+			listener.onRenamed(old.getName().getURI(), file);
+			break;
+		}
+	}
+
+	/**
+	 * Stops watching. Changes not published yet are dropped.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+		SmbWatchHandle current = handle;
+		if (current != null) {
+			try {
+				// Cancels the outstanding notification
+				current.close();
+			} catch (CIFSException e) {
+				log.debug(e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Adapts the changes of a watcher to the listener of an
+	 * {@link IncrementalCrawler}, so that a watch picks up where a crawl left off.
+	 * Files of a folder added or moved into the tree are crawled and reported as
+	 * added; an overflow re-crawls the watched folder incrementally.
+	 *
+	 * @param crawler Crawler used for overflows and added folders. Its manifest
+	 *                of the watched folder is not updated by watch events, so a
+	 *                re-crawl may report again files already reported by the
+	 *                watch.
+	 * @param changes Receives the changes.
+	 */
+	public static Listener feeding(final IncrementalCrawler crawler, final IncrementalCrawler.ChangeListener changes) {
+		final RepositoryCrawler walker = crawler.getCrawler();
+		return new Listener() {
+			@Override
+			public void onAdded(FileObject file) {
+				try {
+					if (file.getType() == FileType.FOLDER) {
+						walker.crawl(file, new CrawlListener() {
+							@Override
+							public void onFile(FileObject found, FileType type, int depth) {
+								if (type == FileType.FILE) {
+									changes.onAdded(found);
+								}
+							}
+
+							@Override
+							public void onError(FileObject failed, Exception e) {
+								changes.onError(failed, e);
+							}
+						});
+					} else if (file.getType() == FileType.FILE) {
+						changes.onAdded(file);
+					}
+				} catch (FileSystemException e) {
+					changes.onError(file, e);
+				}
+			}
+
+			@Override
+			public void onModified(FileObject file) {
+				try {
+					if (file.getType() == FileType.FILE) {
+						changes.onChanged(file);
+					}
+				} catch (FileSystemException e) {
+					changes.onError(file, e);
+				}
+			}
+
+			@Override
+			public void onDeleted(String uri) {
+				changes.onDeleted(uri);
+			}
+
+			@Override
+			public void onOverflow(FileObject folder) {
+				try {
+					crawler.crawl(folder.getName().getURI(), changes);
+				} catch (Exception e) {
+					changes.onError(folder, e);
+				}
+			}
+		};
+	}
+}
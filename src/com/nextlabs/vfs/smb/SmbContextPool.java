@@ -0,0 +1,290 @@
+package com.nextlabs.vfs.smb;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import jcifs.CIFSContext;
+import jcifs.CIFSException;
+import jcifs.Configuration;
+import jcifs.config.DelegatingConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.internal.smb2.io.Smb2ReadResponse;
+import jcifs.internal.smb2.io.Smb2WriteRequest;
+import jcifs.smb.NtlmPasswordAuthenticator;
+
+/*
+ * Shares CIFSContexts between the SMB file systems of one server and set of credentials.
+ *
+ * jcifs reuses transports and sessions only within a context, and every SmbFileSystem used to wrap the base context
+ * with its own credentials, so two file systems on the same share (e.g. after the cache dropped one) negotiated and
+ * authenticated again. Contexts are now looked up by server, credentials, base context and tuning, and built once.
+ *
+ * A context with its own transport pool holds at most one connection to a server. When more connections per server
+ * are asked for, the pool keeps that many contexts, each on its own BaseContext, and hands them out in turn.
+ *
+ * Contexts are counted by the file systems using them and dropped with the last one, closing the transports of the
+ * BaseContexts built here; the base context itself is left alone. Credentials only appear in keys as a digest, so a
+ * password does not outlive the file systems it was given to.
+ */
+final class SmbContextPool {
+	private static final Logger log = LogManager.getLogger(SmbContextPool.class);
+
+	// Guarded by itself, along with the user counts of the contexts
+	private static final Map<Key, Contexts> pool = new HashMap<Key, Contexts>();
+
+	private SmbContextPool() {
+	}
+
+	/*
+	 * The jcifs settings a file system asks for through SmbFileSystemConfigBuilder. Null values keep those of the
+	 * base context.
+	 */
+	static final class Tuning {
+		final Integer maxReadSize;
+		final Integer maxWriteSize;
+		final Integer receiveBufferSize;
+		final Integer sendBufferSize;
+		final Integer credits;
+		final Integer sessionLimit;
+		final int connectionsPerServer;
+
+		Tuning(final FileSystemOptions opts) {
+			final SmbFileSystemConfigBuilder builder = SmbFileSystemConfigBuilder.getInstance();
+			maxReadSize = builder.getMaxReadSize(opts);
+			maxWriteSize = builder.getMaxWriteSize(opts);
+			receiveBufferSize = builder.getReceiveBufferSize(opts);
+			sendBufferSize = builder.getSendBufferSize(opts);
+			credits = builder.getCredits(opts);
+			sessionLimit = builder.getSessionLimit(opts);
+			connectionsPerServer = Math.max(1, builder.getConnectionsPerServer(opts));
+		}
+
+		boolean keepsBaseConfig() {
+			return maxReadSize == null && maxWriteSize == null && receiveBufferSize == null && sendBufferSize == null && credits == null && sessionLimit == null;
+		}
+
+		Configuration apply(final Configuration base) {
+			if (keepsBaseConfig()) {
+				return base;
+			}
+			// jcifs caps SMB2 reads and writes by both the socket buffer and the transaction buffer, less the headers
+			final int receive = max(receiveBufferSize, maxReadSize, base.getReceiveBufferSize());
+			final int send = max(sendBufferSize, maxWriteSize, base.getSendBufferSize());
+			final int transaction = Math.max(base.getTransactionBufferSize(),
+					Math.max(maxReadSize == null ? 0 : maxReadSize + Smb2ReadResponse.OVERHEAD, maxWriteSize == null ? 0 : maxWriteSize + Smb2WriteRequest.OVERHEAD));
+			return new DelegatingConfiguration(base) {
+				@Override
+				public int getReceiveBufferSize() {
+					return receive;
+				}
+
+				// Still read by parts of jcifs under its old spelling
+				@Deprecated
+				@Override
+				public int getRecieveBufferSize() {
+					return receive;
+				}
+
+				@Override
+				public int getSendBufferSize() {
+					return send;
+				}
+
+				@Override
+				public int getTransactionBufferSize() {
+					return transaction;
+				}
+
+				@Override
+				public int getMaxMpxCount() {
+					return credits == null ? super.getMaxMpxCount() : credits;
+				}
+
+				@Override
+				public int getSessionLimit() {
+					return sessionLimit == null ? super.getSessionLimit() : sessionLimit;
+				}
+			};
+		}
+
+		private static int max(final Integer explicit, final Integer required, final int base) {
+			if (explicit != null) {
+				return required == null ? explicit : Math.max(explicit, required);
+			}
+			return required == null ? base : Math.max(base, required);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Tuning)) {
+				return false;
+			}
+			final Tuning other = (Tuning) obj;
+			return Objects.equals(maxReadSize, other.maxReadSize) && Objects.equals(maxWriteSize, other.maxWriteSize) && Objects.equals(receiveBufferSize, other.receiveBufferSize)
+					&& Objects.equals(sendBufferSize, other.sendBufferSize) && Objects.equals(credits, other.credits) && Objects.equals(sessionLimit, other.sessionLimit)
+					&& connectionsPerServer == other.connectionsPerServer;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(maxReadSize, maxWriteSize, receiveBufferSize, sendBufferSize, credits, sessionLimit, connectionsPerServer);
+		}
+	}
+
+	private static final class Key {
+		final String host;
+		final CIFSContext base;
+		final Tuning tuning;
+		final boolean authenticated;
+		// SHA-256 of the domain, user name and password
+		final byte[] credentials;
+
+		Key(final String host, final CIFSContext base, final Tuning tuning, final boolean authenticated, final String domain, final String username, final String password) {
+			this.host = host == null ? null : host.toLowerCase();
+			this.base = base;
+			this.tuning = tuning;
+			this.authenticated = authenticated;
+			this.credentials = authenticated ? digest(domain, username, password) : null;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return base == other.base && authenticated == other.authenticated && Objects.equals(host, other.host) && tuning.equals(other.tuning)
+					&& Arrays.equals(credentials, other.credentials);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(host, System.identityHashCode(base), tuning, Integer.valueOf(Arrays.hashCode(credentials)));
+		}
+	}
+
+	static byte[] digest(final String domain, final String username, final String password) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (final String part : new String[] { domain, username, password }) {
+				// Tells a null part from an empty one, and keeps the parts apart
+				if (part == null) {
+					digest.update((byte) 0);
+				} else {
+					digest.update((byte) 1);
+					digest.update(part.getBytes(StandardCharsets.UTF_8));
+					digest.update((byte) 0);
+				}
+			}
+			return digest.digest();
+		} catch (final NoSuchAlgorithmException e) {
+			// Every JRE has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * The contexts of one key, handed out round robin.
+	 */
+	static final class Contexts {
+		private final Key key;
+		private final CIFSContext[] contexts;
+		// BaseContexts created for this key alone, closed with it
+		private final List<CIFSContext> owned;
+		private final AtomicInteger next = new AtomicInteger();
+		// Guarded by the pool
+		private int users;
+
+		Contexts(final Key key, final CIFSContext[] contexts, final List<CIFSContext> owned) {
+			this.key = key;
+			this.contexts = contexts;
+			this.owned = owned;
+		}
+
+		CIFSContext next() {
+			if (contexts.length == 1) {
+				return contexts[0];
+			}
+			return contexts[(next.getAndIncrement() & Integer.MAX_VALUE) % contexts.length];
+		}
+	}
+
+	/*
+	 * Returns the contexts for a server, creating them on first use, and counts the caller as one of their users until
+	 * it calls release(). Unauthenticated contexts keep the credentials of the base context.
+	 */
+	static Contexts get(final String host, final CIFSContext base, final Tuning tuning, final boolean authenticated, final String domain, final String username, final String password) {
+		final Key key = new Key(host, base, tuning, authenticated, domain, username, password);
+		synchronized (pool) {
+			Contexts found = pool.get(key);
+			if (found == null) {
+				found = create(key, domain, username, password);
+				pool.put(key, found);
+				if (log.isDebugEnabled()) {
+					log.debug("Created " + found.contexts.length + " CIFS context(s) for " + host + " as " + username);
+				}
+			}
+			found.users++;
+			return found;
+		}
+	}
+
+	/*
+	 * Drops a user of the contexts, closing them once nobody uses them any more
+	 */
+	static void release(final Contexts contexts) {
+		synchronized (pool) {
+			if (--contexts.users > 0) {
+				return;
+			}
+			pool.remove(contexts.key);
+		}
+		for (final CIFSContext context : contexts.owned) {
+			try {
+				context.close();
+			} catch (final CIFSException e) {
+				log.debug("Could not close CIFS context: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	private static Contexts create(final Key key, final String domain, final String username, final String password) {
+		final Configuration config = key.tuning.apply(key.base.getConfig());
+		final CIFSContext[] contexts = new CIFSContext[key.tuning.connectionsPerServer];
+		final List<CIFSContext> owned = new ArrayList<CIFSContext>();
+		for (int i = 0; i < contexts.length; i++) {
+			// The first one shares the base context's transports unless its settings differ
+			CIFSContext context;
+			if (i == 0 && config == key.base.getConfig()) {
+				context = key.base;
+			} else {
+				context = new BaseContext(config);
+				owned.add(context);
+				if (!key.authenticated) {
+					context = context.withCredentials(key.base.getCredentials());
+				}
+			}
+			if (key.authenticated) {
+				// What NtlmPasswordAuthentication did with the values left out
+				final Configuration defaults = context.getConfig();
+				context = context.withCredentials(new NtlmPasswordAuthenticator(domain != null ? domain : defaults.getDefaultDomain(),
+						username != null ? username : defaults.getDefaultUsername() != null ? defaults.getDefaultUsername() : "GUEST",
+						password != null ? password : defaults.getDefaultPassword() != null ? defaults.getDefaultPassword() : ""));
+			}
+			contexts[i] = context;
+		}
+		return new Contexts(key, contexts, owned);
+	}
+}
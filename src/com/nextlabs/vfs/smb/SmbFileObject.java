@@ -17,28 +17,82 @@
 package com.nextlabs.vfs.smb;
 
 import jcifs.CIFSContext;
+import jcifs.CIFSException;
+import jcifs.CloseableIterator;
+import jcifs.SmbResource;
 import jcifs.smb.*;
 import org.apache.commons.vfs2.*;
 import org.apache.commons.vfs2.provider.AbstractFileName;
 import org.apache.commons.vfs2.provider.AbstractFileObject;
 import org.apache.commons.vfs2.provider.UriParser;
+import org.apache.commons.vfs2.util.FileObjectUtils;
 import org.apache.commons.vfs2.util.RandomAccessMode;
 import org.apache.commons.vfs2.util.UserAuthenticatorUtils;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
+import com.nextlabs.vfs.ChildIterator;
+import com.nextlabs.vfs.ListingMetadata;
+import com.nextlabs.vfs.OutputLengthHint;
+import com.nextlabs.vfs.StreamingListing;
+import com.nextlabs.vfs.cache.FilesCacheConfigBuilder;
+import com.nextlabs.vfs.io.ParallelRangeInputStream;
+import com.nextlabs.vfs.io.RangeReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A file in an SMB file system.
  */
-public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
+public class SmbFileObject extends AbstractFileObject<SmbFileSystem> implements StreamingListing, OutputLengthHint {
 	// private final String fileName;
 	private SmbFile file;
+	// Attributes of this file from the listing of its parent, see ListingMetadata
+	private volatile ListingMetadata listed;
+	// Attributes of this file from its own query, kept until it is detached or changed
+	private volatile Snapshot snapshot;
+	// Length announced for the next output stream, or -1
+	private volatile long expectedOutputLength = -1;
 	private static final Logger logger = LogManager.getLogger(SmbFileObject.class);
 
+	/*
+	 * The type, size, last-modified time and hidden flag of a file, taken together. On SMB2 jcifs answers exists() with
+	 * a single compounded CREATE/CLOSE whose close response carries the basic and standard information of the path,
+	 * and serves the other getters from what it returned, so the whole snapshot costs one round trip. SMB1 servers
+	 * answer the size with a second TRANS2_QUERY_PATH_INFORMATION.
+	 */
+	private static final class Snapshot {
+		final FileType type;
+		final long size;
+		final long lastModified;
+		final boolean hidden;
+
+		Snapshot(final SmbFile file) throws SmbException {
+			if (!file.exists()) {
+				type = FileType.IMAGINARY;
+				size = 0;
+				lastModified = 0;
+				hidden = false;
+			} else {
+				type = file.isDirectory() ? FileType.FOLDER : FileType.FILE;
+				size = type == FileType.FILE ? file.length() : 0;
+				lastModified = file.lastModified();
+				hidden = file.isHidden();
+			}
+		}
+	}
+
 	@SuppressWarnings("RedundantThrows")
 	protected SmbFileObject(final AbstractFileName name, final SmbFileSystem fileSystem) throws FileSystemException {
 		super(name, fileSystem);
@@ -49,20 +103,11 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 	 */
 	@Override
 	protected void doAttach() throws Exception {
-		// Defer creation of the SmbFile to here
-		while (true) {
-			try {
-				if (file == null) {
-					file = createSmbFile(getName());
-				}
-				break;
-			} catch (SmbException e) {
-				logger.debug(e.getMessage(), e);
-				logger.debug("Failed to attach file, retrying in 3s...");
-				System.out.println("Failed to attach file, retrying in 3s...");
-				Thread.sleep(3000L);
-			}
-		}	
+		// Defer creation of the SmbFile to here. An unreachable server is retried a few times, then fails the attach.
+		if (file == null) {
+			final ListingMetadata listing = ListingMetadata.fresh(listed);
+			file = getAbstractFileSystem().callServer(getName(), () -> createSmbFile(getName(), listing));
+		}
 	}
 
 	@SuppressWarnings("RedundantThrows")
@@ -71,14 +116,26 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 		// file closed through content-streams
 		file.close();
 		file = null;
+		snapshot = null;
 	}
 
 	private SmbFile createSmbFile(final FileName fileName) throws SmbException, FileSystemException, MalformedURLException {
+		return createSmbFile(fileName, null, getAbstractFileSystem().getCifsContext());
+	}
+
+	private SmbFile createSmbFile(final FileName fileName, final ListingMetadata listing) throws SmbException, FileSystemException, MalformedURLException {
+		return createSmbFile(fileName, listing, getAbstractFileSystem().getCifsContext());
+	}
+
+	/*
+	 * A listed file's type is already known, which saves the isDirectory() round trip. Otherwise the path is queried
+	 * once and the answer kept as this file's snapshot, so that the type, size and times asked for next are free.
+	 */
+	private SmbFile createSmbFile(final FileName fileName, final ListingMetadata listing, final CIFSContext cifsContext) throws SmbException, FileSystemException, MalformedURLException {
 		SmbFile file = null;
 		try {
 			final SmbFileName smbFileName = (SmbFileName) fileName;
 			final String path = smbFileName.getUriWithoutAuth();
-			CIFSContext cifsContext = getAbstractFileSystem().getCifsContext();
 
 			if ("true".equals(System.getProperty("enable_debugging"))) {
 				System.out.println("Checking CIFS Context properties...");
@@ -95,11 +152,22 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 				System.out.println("isPort139FailoverEnabled" + "=" + cifsContext.getConfig().isPort139FailoverEnabled());
 			}
 	
-			file = new SmbFile(path, cifsContext);
-	
-			if (file.isDirectory() && !file.toString().endsWith("/")) {
-				file = new SmbFile(path + "/", cifsContext);
+			if (listing != null && listing.getType() != null) {
+				file = new SmbFile(listing.getType() == FileType.FOLDER && !path.endsWith("/") ? path + "/" : path, cifsContext);
+			} else {
+				file = new SmbFile(path, cifsContext);
+				final Snapshot queried = new Snapshot(file);
+		
+				if (queried.type == FileType.FOLDER && !file.toString().endsWith("/")) {
+					file = new SmbFile(path + "/", cifsContext);
+				}
+				if (fileName.equals(getName())) {
+					snapshot = queried;
+				}
 			}
+		} catch (SmbException e) {
+			// Left to the caller, which retries an unreachable server
+			throw e;
 		} catch (Throwable t) {
 			t.printStackTrace();
 		}
@@ -111,23 +179,31 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 	 */
 	@Override
 	protected FileType doGetType() throws Exception {
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getType() != null) {
+			return listing.getType();
+		}
 		try {
+			final FileType type = getSnapshot().type;
 			if ("true".equals(System.getProperty("enable_debugging"))) {
-				System.out.println("SmbFileObject.doGetType file exists? " + !file.exists());
-			}
-			if (!file.exists()) {
-				return FileType.IMAGINARY;
-			} else if (file.isDirectory()) {
-				return FileType.FOLDER;
-			} else if (file.isFile()) {
-				return FileType.FILE;
+				System.out.println("SmbFileObject.doGetType " + getName() + " is " + type);
 			}
+			return type;
 		} catch (Throwable t) {
 			t.printStackTrace();
 		}
 		throw new FileSystemException("vfs.provider.smb/get-type.error", getName());
 	}
 
+	private Snapshot getSnapshot() throws Exception {
+		Snapshot current = snapshot;
+		if (current == null) {
+			current = getAbstractFileSystem().callServer(getName(), () -> new Snapshot(file));
+			snapshot = current;
+		}
+		return current;
+	}
+
 	/**
 	 * Lists the children of the file. Is only called if {@link #doGetType} returns
 	 * {@link FileType#FOLDER}.
@@ -135,11 +211,111 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 	@Override
 	protected String[] doListChildren() throws Exception {
 		// VFS-210: do not try to get listing for anything else than directories
-		if (!file.isDirectory()) {
+		if (getSnapshot().type != FileType.FOLDER) {
+			return null;
+		}
+
+		final String wildcard = getAbstractFileSystem().getListingWildcard();
+		if (wildcard == null) {
+			return getAbstractFileSystem().callServer(getName(), () -> file.list());
+		}
+		// jcifs only takes a wildcard when listing SmbFiles
+		final SmbFile[] files = getAbstractFileSystem().callServer(getName(), () -> file.listFiles(wildcard));
+		final String[] names = new String[files.length];
+		for (int i = 0; i < files.length; i++) {
+			names[i] = files[i].getName();
+		}
+		return names;
+	}
+
+	/**
+	 * Lists the children with listFiles(), whose SmbFiles already carry the
+	 * attributes of their directory entries, and hands each of them to its child
+	 * file object. Attaching and statting the children then costs no further
+	 * round trips.
+	 */
+	@Override
+	protected FileObject[] doListChildrenResolved() throws Exception {
+		if (getSnapshot().type != FileType.FOLDER) {
 			return null;
 		}
 
-		return file.list();
+		final String wildcard = getAbstractFileSystem().getListingWildcard();
+		final SmbFile[] files = getAbstractFileSystem().callServer(getName(), () -> wildcard == null ? file.listFiles() : file.listFiles(wildcard));
+		final FileObject[] children = new FileObject[files.length];
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+			if (name.endsWith("/")) {
+				name = name.substring(0, name.length() - 1);
+			}
+			children[i] = getFileSystem().resolveFile(getFileSystem().getFileSystemManager().resolveName(getName(), name, NameScope.CHILD));
+			final AbstractFileObject<?> child = FileObjectUtils.getAbstractFileObject(children[i]);
+			if (child instanceof SmbFileObject) {
+				((SmbFileObject) child).adopt(files[i]);
+			}
+		}
+		return children;
+	}
+
+	/**
+	 * Lists the children through the SMB2 QUERY_DIRECTORY (or SMB1 FIND_NEXT)
+	 * paging of jcifs, so that only one page of directory entries is held at a
+	 * time. Each child is seeded with the type, size and last-modified time of
+	 * its directory entry.
+	 */
+	@Override
+	public ChildIterator iterateChildren() throws FileSystemException {
+		if (!getType().hasChildren()) {
+			throw new FileNotFolderException(getName());
+		}
+		final CloseableIterator<SmbResource> children;
+		try {
+			final String wildcard = getAbstractFileSystem().getListingWildcard();
+			// Only the first page goes through the retries, later ones are fetched as the iterator moves on
+			children = getAbstractFileSystem().callServer(getName(), () -> wildcard == null ? file.children() : file.children(wildcard));
+		} catch (final FileSystemException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw new FileSystemException("vfs.provider/list-children.error", e, getName());
+		}
+		final long validity = FilesCacheConfigBuilder.getInstance().getListingValidity(getFileSystem().getFileSystemOptions());
+		return new ChildIterator() {
+			@Override
+			public boolean hasNext() {
+				return children.hasNext();
+			}
+
+			@Override
+			public FileObject next() {
+				try (SmbResource child = children.next()) {
+					String name = child.getName();
+					if (name.endsWith("/")) {
+						name = name.substring(0, name.length() - 1);
+					}
+					final FileObject res = getFileSystem().resolveFile(getFileSystem().getFileSystemManager().resolveName(getName(), name, NameScope.CHILD));
+					final AbstractFileObject<?> childFile = FileObjectUtils.getAbstractFileObject(res);
+					if (childFile instanceof SmbFileObject) {
+						// The directory entry carries the attributes, which jcifs keeps on the listed resource
+						final boolean directory = child.isDirectory();
+						((SmbFileObject) childFile).seed(new ListingMetadata(directory ? FileType.FOLDER : FileType.FILE, directory ? null : Long.valueOf(child.length()), Long.valueOf(child.lastModified()), null, validity));
+					}
+					return res;
+				} catch (final CIFSException e) {
+					throw new UncheckedIOException(new FileSystemException("vfs.provider/list-children.error", e, getName()));
+				} catch (final FileSystemException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			public void close() {
+				try {
+					children.close();
+				} catch (final CIFSException e) {
+					logger.debug(e.getMessage(), e);
+				}
+			}
+		};
 	}
 
 	/**
@@ -147,7 +323,7 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 	 */
 	@Override
 	protected boolean doIsHidden() throws Exception {
-		return file.isHidden();
+		return getSnapshot().hidden;
 	}
 
 	/**
@@ -161,7 +337,96 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 
 	@Override
 	protected void doRename(final FileObject newfile) throws Exception {
-		file.renameTo(createSmbFile(newfile.getName()));
+		// jcifs only renames within a tree, so the target has to be on this file's connection
+		file.renameTo(createSmbFile(newfile.getName(), null, file.getContext()));
+	}
+
+	/**
+	 * Copies another file, or the files of another folder picked by a selector,
+	 * to this file.
+	 * <p>
+	 * When the source is on the same share of the same server, reached with the
+	 * same credentials, file contents are copied by the server (SMB2 server-side
+	 * copy) instead of being read into this JVM and written back. Anything else,
+	 * and any file the server fails to copy, is streamed as before.
+	 */
+	@Override
+	public void copyFrom(final FileObject srcFile, final FileSelector selector) throws FileSystemException {
+		final FileObject source = FileObjectUtils.getAbstractFileObject(srcFile);
+		if (!(source instanceof SmbFileObject) || !getAbstractFileSystem().isServerSideCopy()
+				|| !getAbstractFileSystem().sharesConnections(((SmbFileObject) source).getAbstractFileSystem())) {
+			super.copyFrom(srcFile, selector);
+			return;
+		}
+		if (!srcFile.exists()) {
+			throw new FileSystemException("vfs.provider/copy-missing-file.error", srcFile);
+		}
+
+		// Same steps as AbstractFileObject.copyFrom, with the content copied on the server
+		final List<FileObject> files = new ArrayList<FileObject>();
+		srcFile.findFiles(selector, false, files);
+		for (final FileObject from : files) {
+			final String relPath = srcFile.getName().getRelativeName(from.getName());
+			final FileObject to = resolveFile(relPath, NameScope.DESCENDENT_OR_SELF);
+			if (to.exists() && to.getType() != from.getType()) {
+				to.deleteAll();
+			}
+			try {
+				if (from.getType().hasContent()) {
+					if (!copyOnServer(from, to)) {
+						FileUtil.copyContent(from, to);
+					}
+				} else if (from.getType().hasChildren()) {
+					to.createFolder();
+				}
+			} catch (final IOException e) {
+				throw new FileSystemException("vfs.provider/copy-file.error", e, from, to);
+			}
+		}
+	}
+
+	/*
+	 * Copies a file with SmbFile.copyTo, which jcifs turns into FSCTL_SRV_COPYCHUNK requests when both files are in
+	 * the same tree. Both SmbFiles are therefore created on one context, and files on different shares are left to
+	 * the caller. Returns false when the file was not copied.
+	 */
+	private boolean copyOnServer(final FileObject from, final FileObject to) throws FileSystemException {
+		final FileObject target = FileObjectUtils.getAbstractFileObject(to);
+		if (!(target instanceof SmbFileObject)) {
+			return false;
+		}
+		final boolean existed = to.exists();
+		try {
+			final CIFSContext context = getAbstractFileSystem().getCifsContext();
+			final SmbFile source = new SmbFile(((SmbFileName) from.getName()).getUriWithoutAuth(), context);
+			final SmbFile destination = new SmbFile(((SmbFileName) to.getName()).getUriWithoutAuth(), context);
+			if (source.getShare() == null || !source.getShare().equalsIgnoreCase(destination.getShare())) {
+				return false;
+			}
+			source.copyTo(destination);
+		} catch (final MalformedURLException | SmbException e) {
+			logger.debug("Server-side copy of " + from.getName() + " failed, streaming it instead", e);
+			return false;
+		}
+		try {
+			((SmbFileObject) target).copied(existed);
+		} catch (final Exception e) {
+			throw new FileSystemException("vfs.provider/copy-file.error", e, from, to);
+		}
+		return true;
+	}
+
+	/*
+	 * Tells VFS about a file written on the server. handleChanged() only fires the event, so the listed and queried
+	 * attributes of a file that existed are dropped here first.
+	 */
+	void copied(final boolean existed) throws Exception {
+		onChange();
+		if (existed) {
+			handleChanged();
+		} else {
+			handleCreate(FileType.FILE);
+		}
 	}
 
 	/**
@@ -170,6 +435,7 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 	@Override
 	protected void doCreateFolder() throws Exception {
 		file.mkdir();
+		snapshot = null;
 		file = createSmbFile(getName());
 	}
 
@@ -178,7 +444,11 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 	 */
 	@Override
 	protected long doGetContentSize() throws Exception {
-		return file.length();
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getSize() != null) {
+			return listing.getSize().longValue();
+		}
+		return getSnapshot().size;
 	}
 
 	/**
@@ -187,7 +457,40 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 	@SuppressWarnings("RedundantThrows")
 	@Override
 	protected long doGetLastModifiedTime() throws Exception {
-		return file.getLastModified();
+		ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getLastModified() != null) {
+			return listing.getLastModified().longValue();
+		}
+		return getSnapshot().lastModified;
+	}
+
+	/**
+	 * Forgets the listed and queried attributes once this file is changed through
+	 * the library.
+	 */
+	@Override
+	protected void onChange() throws Exception {
+		listed = null;
+		snapshot = null;
+	}
+
+	void seed(final ListingMetadata metadata) {
+		listed = metadata;
+	}
+
+	boolean hasCachedAttributes() {
+		return listed != null || snapshot != null;
+	}
+
+	/*
+	 * Takes the attributes of a listed SmbFile, and the SmbFile itself if this file is not attached yet so that
+	 * attaching does not query the path again. Called with the file system locked, as listing and attaching are.
+	 */
+	private void adopt(final SmbFile listedFile) throws SmbException {
+		snapshot = new Snapshot(listedFile);
+		if (file == null) {
+			file = listedFile;
+		}
 	}
 
 	/**
@@ -195,11 +498,22 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 	 */
 	@Override
 	protected InputStream doGetInputStream() throws Exception {
-		if (file.isDirectory()) {
+		// A listed file is known to be one without asking the server again
+		final ListingMetadata listing = ListingMetadata.fresh(listed);
+		final FileType type = listing != null && listing.getType() != null ? listing.getType() : getSnapshot().type;
+		if (type == FileType.FOLDER) {
 			throw new FileTypeHasNoContentException(getName());
 		}
 		try {
-			return new SmbFileInputStream(file);
+			final SmbFileSystem fileSystem = getAbstractFileSystem();
+			final long size = doGetContentSize();
+			if (size <= fileSystem.getSmallFileThreshold()) {
+				return getSmallFileInputStream((int) size);
+			}
+			if (fileSystem.getParallelReadParallelism() > 1 && size >= fileSystem.getParallelReadThreshold()) {
+				return getParallelInputStream(size);
+			}
+			return open(() -> new SmbFileInputStream(file));
 		} catch (final SmbException e) {
 			int ntStatus = e.getNtStatus();
 			if (ntStatus == NtStatus.NT_STATUS_NO_SUCH_FILE || ntStatus == NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND || ntStatus == NtStatus.NT_STATUS_NOT_FOUND) {
@@ -209,15 +523,112 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 		}
 	}
 
+	/*
+	 * Reads a small file whole, in a single READ when it fits the negotiated maximum, and closes it before handing
+	 * back its content. A plain SmbFileInputStream sends a READ per read() of the caller, so one open, one read and
+	 * one close is all a small file costs instead of a round trip per buffer the caller reads with.
+	 *
+	 * One byte more than expected is asked for, which tells a file that grew since its size was taken without
+	 * another round trip; the rest of such a file is streamed from the same handle.
+	 */
+	private InputStream getSmallFileInputStream(final int size) throws IOException {
+		final byte[] buffer = new byte[size + 1];
+		final SmbFileInputStream in = open(() -> new SmbFileInputStream(file));
+		boolean handedOver = false;
+		try {
+			int count = 0;
+			do {
+				final int read = in.read(buffer, count, buffer.length - count);
+				if (read < 0) {
+					break;
+				}
+				count += read;
+			} while (count < size);
+			if (count <= size) {
+				return new ByteArrayInputStream(buffer, 0, count);
+			}
+			handedOver = true;
+			return new SequenceInputStream(new ByteArrayInputStream(buffer, 0, count), in);
+		} finally {
+			if (!handedOver) {
+				in.close();
+			}
+		}
+	}
+
+	/*
+	 * Reads a large file over several handles, each opened on the next of the file system's contexts so that they
+	 * are spread over its connections to the server. Opening the first handle up front reports a missing file here
+	 * rather than on the first read.
+	 */
+	private InputStream getParallelInputStream(final long size) throws IOException {
+		final SmbFileSystem fileSystem = getAbstractFileSystem();
+		final URL url = file.getURL();
+		final SmbRangeReader first = new SmbRangeReader(open(() -> new SmbRandomAccessFile(file, "r")));
+		final AtomicBoolean firstTaken = new AtomicBoolean();
+		final RangeReader.Opener opener = () -> {
+			if (firstTaken.compareAndSet(false, true)) {
+				return first;
+			}
+			return new SmbRangeReader(open(() -> new SmbRandomAccessFile(new SmbFile(url, fileSystem.getCifsContext()), "r")));
+		};
+		return new ParallelRangeInputStream(opener, size, fileSystem.getParallelReadChunkSize(), fileSystem.getParallelReadParallelism()) {
+			@Override
+			public void close() throws IOException {
+				super.close();
+				if (firstTaken.compareAndSet(false, true)) {
+					first.close();
+				}
+			}
+		};
+	}
+
 	/**
 	 * Creates an output stream to write the file content to.
 	 */
 	@Override
 	protected OutputStream doGetOutputStream(final boolean bAppend) throws Exception {
-		if (file.isDirectory()) {
+		if (getSnapshot().type == FileType.FOLDER) {
 			throw new FileTypeHasNoContentException(getName());
 		}
-		return new SmbFileOutputStream(file, bAppend);
+		final long expectedLength = expectedOutputLength;
+		expectedOutputLength = -1;
+		final SmbFileSystem fileSystem = getAbstractFileSystem();
+		if (fileSystem.getWriteBehindParallelism() < 1) {
+			return open(() -> new SmbFileOutputStream(file, bAppend));
+		}
+		// Further handles are opened on the next of the file system's contexts, as for parallel reads
+		final URL url = file.getURL();
+		return new SmbWriteBehindOutputStream(open(() -> new SmbRandomAccessFile(file, "rw")), () -> open(() -> new SmbRandomAccessFile(new SmbFile(url, fileSystem.getCifsContext()), "rw")), bAppend,
+				expectedLength, fileSystem.getWriteBlockSize(), fileSystem.getWriteBehindParallelism());
+	}
+
+	/*
+	 * Opens a handle on the server with the retries of the file system. Reads and writes on the handle are not
+	 * retried: an open handle does not survive the connection it was opened on.
+	 */
+	private <T> T open(final Callable<T> open) throws IOException {
+		try {
+			return getAbstractFileSystem().callServer(getName(), open);
+		} catch (final IOException | RuntimeException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Watches this folder and the tree below it for changes.
+	 * 
+	 * @see SmbChangeWatcher#watch(FileObject, SmbChangeWatcher.Listener)
+	 */
+	public SmbChangeWatcher watch(final SmbChangeWatcher.Listener listener) throws FileSystemException {
+		return SmbChangeWatcher.watch(this, listener);
+	}
+
+	@Override
+	public void setExpectedOutputLength(final long length) {
+		expectedOutputLength = length;
 	}
 
 	/**
@@ -225,12 +636,13 @@ public class SmbFileObject extends AbstractFileObject<SmbFileSystem> {
 	 */
 	@Override
 	protected RandomAccessContent doGetRandomAccessContent(final RandomAccessMode mode) throws Exception {
-		return new SmbFileRandomAccessContent(file, mode);
+		return new SmbFileRandomAccessContent(file, mode, getAbstractFileSystem().getRandomAccessWindowSize());
 	}
 
 	@Override
 	protected boolean doSetLastModifiedTime(final long modtime) throws Exception {
 		file.setLastModified(modtime);
+		snapshot = null;
 		return true;
 	}
 }
\ No newline at end of file
@@ -23,30 +23,48 @@ import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.provider.AbstractRandomAccessContent;
 import org.apache.commons.vfs2.util.RandomAccessMode;
 
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 /**
  * RandomAccess for smb files
+ * <p>
+ * Reads go through a read-ahead window: a read outside the window fetches the
+ * next {@code windowSize} bytes from the current position in one SMB READ, and
+ * the reads that follow are served from memory until they leave it. Parsing a
+ * header field by field, or reading a file sequentially in small pieces, thus
+ * costs a few large reads instead of one round trip per field. Reads at least
+ * as large as the window go to the server directly. Seeking within the window
+ * keeps it, any write or length change drops it. A window size of 0 turns
+ * the buffering off.
  */
 class SmbFileRandomAccessContent extends AbstractRandomAccessContent {
 	private final SmbRandomAccessFile raf;
 	private final InputStream rafis;
-
-	SmbFileRandomAccessContent(final SmbFile smbFile, final RandomAccessMode mode) throws FileSystemException {
+	private final DataInputStream data;
+	private final int windowSize;
+	private byte[] window;
+	private long windowStart;
+	private int windowLength;
+	// Position of this content, which runs ahead of the SmbRandomAccessFile's while reading from the window
+	private long pointer;
+
+	SmbFileRandomAccessContent(final SmbFile smbFile, final RandomAccessMode mode, final int windowSize) throws FileSystemException {
 		super(mode);
 
+		this.windowSize = windowSize;
 		try {
 			raf = new SmbRandomAccessFile(smbFile, mode.getModeString());
 			rafis = new InputStream() {
 				@Override
 				public int available() throws IOException {
-					final long available = raf.length() - raf.getFilePointer();
+					final long available = raf.length() - pointer;
 					if (available > Integer.MAX_VALUE) {
 						return Integer.MAX_VALUE;
 					}
 
-					return (int) available;
+					return (int) Math.max(0, available);
 				}
 
 				@Override
@@ -56,38 +74,114 @@ class SmbFileRandomAccessContent extends AbstractRandomAccessContent {
 
 				@Override
 				public int read() throws IOException {
-					return raf.readByte();
+					return readBuffered();
 				}
 
 				@Override
 				public int read(final byte[] b) throws IOException {
-					return raf.read(b);
+					return readBuffered(b, 0, b.length);
 				}
 
 				@Override
 				public int read(final byte[] b, final int off, final int len) throws IOException {
-					return raf.read(b, off, len);
+					return readBuffered(b, off, len);
 				}
 
 				@SuppressWarnings("RedundantThrows")
 				@Override
 				public long skip(final long n) throws IOException {
-					raf.seek(raf.getFilePointer() + n);
+					pointer += n;
 					return n;
 				}
 			};
+			data = new DataInputStream(rafis);
 		} catch (final SmbException e) {
 			throw new FileSystemException("vfs.provider/random-access-open-failed.error", smbFile, e);
 		}
 	}
 
+	private int readBuffered() throws IOException {
+		if (windowSize <= 0) {
+			syncPointer();
+			final int read = raf.read();
+			if (read >= 0) {
+				pointer++;
+			}
+			return read;
+		}
+		if (!inWindow() && !fill()) {
+			return -1;
+		}
+		return window[(int) (pointer++ - windowStart)] & 0xff;
+	}
+
+	private int readBuffered(final byte[] b, final int off, final int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!inWindow()) {
+			if (len >= windowSize) {
+				// Nothing to gain from copying through the window
+				syncPointer();
+				final int read = raf.read(b, off, len);
+				if (read > 0) {
+					pointer += read;
+				}
+				return read;
+			}
+			if (!fill()) {
+				return -1;
+			}
+		}
+		final int n = Math.min(len, (int) (windowStart + windowLength - pointer));
+		System.arraycopy(window, (int) (pointer - windowStart), b, off, n);
+		pointer += n;
+		return n;
+	}
+
+	private boolean inWindow() {
+		return window != null && pointer >= windowStart && pointer < windowStart + windowLength;
+	}
+
+	/*
+	 * Reads the window starting at the current position. Returns false at the end of the file.
+	 */
+	private boolean fill() throws IOException {
+		if (window == null) {
+			window = new byte[windowSize];
+		}
+		syncPointer();
+		final int read = raf.read(window, 0, windowSize);
+		windowStart = pointer;
+		windowLength = Math.max(0, read);
+		return read > 0;
+	}
+
+	private void syncPointer() throws IOException {
+		if (raf.getFilePointer() != pointer) {
+			raf.seek(pointer);
+		}
+	}
+
+	/*
+	 * Drops the window and moves the SmbRandomAccessFile to this content's position before a write
+	 */
+	private void beforeWrite() throws IOException {
+		windowLength = 0;
+		syncPointer();
+	}
+
+	private void afterWrite() {
+		pointer = raf.getFilePointer();
+	}
+
 	public void close() throws IOException {
 		raf.close();
 	}
 
 	@SuppressWarnings("RedundantThrows")
 	public long getFilePointer() throws IOException {
-		return raf.getFilePointer();
+		return pointer;
 	}
 
 	@SuppressWarnings("RedundantThrows")
@@ -100,138 +194,179 @@ class SmbFileRandomAccessContent extends AbstractRandomAccessContent {
 	}
 
 	public boolean readBoolean() throws IOException {
-		return raf.readBoolean();
+		return data.readBoolean();
 	}
 
 	public byte readByte() throws IOException {
-		return raf.readByte();
+		return data.readByte();
 	}
 
 	public char readChar() throws IOException {
-		return raf.readChar();
+		return data.readChar();
 	}
 
 	public double readDouble() throws IOException {
-		return raf.readDouble();
+		return data.readDouble();
 	}
 
 	public float readFloat() throws IOException {
-		return raf.readFloat();
+		return data.readFloat();
 	}
 
 	public void readFully(final byte[] b) throws IOException {
-		raf.readFully(b);
+		data.readFully(b);
 	}
 
 	public void readFully(final byte[] b, final int off, final int len) throws IOException {
-		raf.readFully(b, off, len);
+		data.readFully(b, off, len);
 	}
 
 	public int readInt() throws IOException {
-		return raf.readInt();
+		return data.readInt();
 	}
 
 	public long readLong() throws IOException {
-		return raf.readLong();
+		return data.readLong();
 	}
 
 	public short readShort() throws IOException {
-		return raf.readShort();
+		return data.readShort();
 	}
 
 	public int readUnsignedByte() throws IOException {
-		return raf.readUnsignedByte();
+		return data.readUnsignedByte();
 	}
 
 	public int readUnsignedShort() throws IOException {
-		return raf.readUnsignedShort();
+		return data.readUnsignedShort();
 	}
 
 	public String readUTF() throws IOException {
-		return raf.readUTF();
+		return data.readUTF();
 	}
 
 	@SuppressWarnings("RedundantThrows")
 	public void seek(final long pos) throws IOException {
-		raf.seek(pos);
+		if (pos < 0) {
+			throw new IOException("Negative seek offset");
+		}
+		pointer = pos;
 	}
 
 	public void setLength(final long newLength) throws IOException {
+		beforeWrite();
 		raf.setLength(newLength);
+		if (pointer > newLength) {
+			pointer = newLength;
+		}
 	}
 
 	public int skipBytes(final int n) throws IOException {
-		return raf.skipBytes(n);
+		if (n <= 0) {
+			return 0;
+		}
+		final long target = Math.min(pointer + n, raf.length());
+		final int skipped = (int) Math.max(0, target - pointer);
+		pointer += skipped;
+		return skipped;
 	}
 
 	@Override
 	public void write(final byte[] b) throws IOException {
+		beforeWrite();
 		raf.write(b);
+		afterWrite();
 	}
 
 	@Override
 	public void write(final byte[] b, final int off, final int len) throws IOException {
+		beforeWrite();
 		raf.write(b, off, len);
+		afterWrite();
 	}
 
 	@Override
 	public void write(final int b) throws IOException {
+		beforeWrite();
 		raf.write(b);
+		afterWrite();
 	}
 
 	@Override
 	public void writeBoolean(final boolean v) throws IOException {
+		beforeWrite();
 		raf.writeBoolean(v);
+		afterWrite();
 	}
 
 	@Override
 	public void writeByte(final int v) throws IOException {
+		beforeWrite();
 		raf.writeByte(v);
+		afterWrite();
 	}
 
 	@Override
 	public void writeBytes(final String s) throws IOException {
+		beforeWrite();
 		raf.writeBytes(s);
+		afterWrite();
 	}
 
 	@Override
 	public void writeChar(final int v) throws IOException {
+		beforeWrite();
 		raf.writeChar(v);
+		afterWrite();
 	}
 
 	@Override
 	public void writeChars(final String s) throws IOException {
+		beforeWrite();
 		raf.writeChars(s);
+		afterWrite();
 	}
 
 	@Override
 	public void writeDouble(final double v) throws IOException {
+		beforeWrite();
 		raf.writeDouble(v);
+		afterWrite();
 	}
 
 	@Override
 	public void writeFloat(final float v) throws IOException {
+		beforeWrite();
 		raf.writeFloat(v);
+		afterWrite();
 	}
 
 	@Override
 	public void writeInt(final int v) throws IOException {
+		beforeWrite();
 		raf.writeInt(v);
+		afterWrite();
 	}
 
 	@Override
 	public void writeLong(final long v) throws IOException {
+		beforeWrite();
 		raf.writeLong(v);
+		afterWrite();
 	}
 
 	@Override
 	public void writeShort(final int v) throws IOException {
+		beforeWrite();
 		raf.writeShort(v);
+		afterWrite();
 	}
 
 	@Override
 	public void writeUTF(final String str) throws IOException {
+		beforeWrite();
 		raf.writeUTF(str);
+		afterWrite();
 	}
 
 }
\ No newline at end of file
@@ -18,19 +18,33 @@ package com.nextlabs.vfs.smb;
 
 import jcifs.CIFSContext;
 import jcifs.context.SingletonContext;
-import jcifs.smb.NtlmPasswordAuthentication;
 import org.apache.commons.vfs2.*;
 import org.apache.commons.vfs2.provider.AbstractFileName;
 import org.apache.commons.vfs2.provider.AbstractFileSystem;
+import org.apache.commons.vfs2.provider.GenericFileName;
 import org.apache.commons.vfs2.util.UserAuthenticatorUtils;
 
 import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An SMB file system.
  */
 public class SmbFileSystem extends AbstractFileSystem {
-	private final CIFSContext cifsContext;
+	private final SmbContextPool.Contexts cifsContexts;
+	private final AtomicBoolean released = new AtomicBoolean();
+	private final String listingWildcard;
+	private final int randomAccessWindowSize;
+	private final long parallelReadThreshold;
+	private final int smallFileThreshold;
+	private final int parallelReadParallelism;
+	private final int parallelReadChunkSize;
+	private final int writeBlockSize;
+	private final int writeBehindParallelism;
+	private final boolean serverSideCopy;
+	private final long watchCoalesceDelay;
+	private final SmbRetryPolicy retryPolicy;
 
 	protected SmbFileSystem(final FileName rootName, final FileSystemOptions fileSystemOptions) {
 		super(rootName, null, fileSystemOptions);
@@ -39,13 +53,30 @@ public class SmbFileSystem extends AbstractFileSystem {
 			cifsContext = SingletonContext.getInstance();
 		}
 
+		// File systems of the same server and credentials share their contexts, and with them transports and sessions
+		final String host = rootName instanceof GenericFileName ? ((GenericFileName) rootName).getHostName() : rootName.getRootURI();
+		final SmbContextPool.Tuning tuning = new SmbContextPool.Tuning(fileSystemOptions);
 		UserAuthenticationData authData = UserAuthenticatorUtils.authenticate(fileSystemOptions, SmbFileProvider.AUTHENTICATOR_TYPES);
 		if (authData != null) {
-			NtlmPasswordAuthentication auth = new NtlmPasswordAuthentication(cifsContext, UserAuthenticatorUtils.toString(UserAuthenticatorUtils.getData(authData, UserAuthenticationData.DOMAIN, null)),
+			this.cifsContexts = SmbContextPool.get(host, cifsContext, tuning, true, UserAuthenticatorUtils.toString(UserAuthenticatorUtils.getData(authData, UserAuthenticationData.DOMAIN, null)),
 					UserAuthenticatorUtils.toString(UserAuthenticatorUtils.getData(authData, UserAuthenticationData.USERNAME, null)), UserAuthenticatorUtils.toString(UserAuthenticatorUtils.getData(authData, UserAuthenticationData.PASSWORD, null)));
-			cifsContext = cifsContext.withCredentials(auth);
+		} else {
+			this.cifsContexts = SmbContextPool.get(host, cifsContext, tuning, false, null, null, null);
 		}
-		this.cifsContext = cifsContext;
+
+		String wildcard = SmbFileSystemConfigBuilder.getInstance().getListingWildcard(fileSystemOptions);
+		this.listingWildcard = wildcard == null || wildcard.isEmpty() || "*".equals(wildcard) ? null : wildcard;
+		this.randomAccessWindowSize = Math.max(0, SmbFileSystemConfigBuilder.getInstance().getRandomAccessWindowSize(fileSystemOptions));
+		this.parallelReadThreshold = SmbFileSystemConfigBuilder.getInstance().getParallelReadThreshold(fileSystemOptions);
+		// Read into one array, so kept well below 2 GiB
+		this.smallFileThreshold = Math.max(-1, Math.min(64 * 1024 * 1024, SmbFileSystemConfigBuilder.getInstance().getSmallFileThreshold(fileSystemOptions)));
+		this.parallelReadParallelism = Math.max(1, SmbFileSystemConfigBuilder.getInstance().getParallelReadParallelism(fileSystemOptions));
+		this.parallelReadChunkSize = Math.max(64 * 1024, SmbFileSystemConfigBuilder.getInstance().getParallelReadChunkSize(fileSystemOptions));
+		this.writeBlockSize = Math.max(4 * 1024, SmbFileSystemConfigBuilder.getInstance().getWriteBlockSize(fileSystemOptions));
+		this.writeBehindParallelism = Math.max(0, SmbFileSystemConfigBuilder.getInstance().getWriteBehindParallelism(fileSystemOptions));
+		this.serverSideCopy = SmbFileSystemConfigBuilder.getInstance().isServerSideCopy(fileSystemOptions);
+		this.watchCoalesceDelay = Math.max(0, SmbFileSystemConfigBuilder.getInstance().getWatchCoalesceDelay(fileSystemOptions));
+		this.retryPolicy = new SmbRetryPolicy(host, fileSystemOptions);
 	}
 
 	/**
@@ -64,7 +95,92 @@ public class SmbFileSystem extends AbstractFileSystem {
 		caps.addAll(SmbFileProvider.capabilities);
 	}
 
+	/*
+	 * Spread over the connections to the server when more than one is configured
+	 */
 	CIFSContext getCifsContext() {
-		return cifsContext;
+		return cifsContexts.next();
+	}
+
+	/*
+	 * Gives the pooled contexts back once the manager drops this file system
+	 */
+	@Override
+	public void close() {
+		try {
+			super.close();
+		} finally {
+			if (released.compareAndSet(false, true)) {
+				SmbContextPool.release(cifsContexts);
+			}
+		}
+	}
+
+	/*
+	 * Runs a request against the server with the retries and circuit breaker of the server
+	 */
+	<T> T callServer(final FileName name, final Callable<T> request) throws Exception {
+		return retryPolicy.call(name, request);
+	}
+
+	/**
+	 * @return The circuit breaker of the server of this file system.
+	 */
+	public SmbServerBreaker getServerBreaker() {
+		return retryPolicy.getBreaker();
+	}
+
+	/*
+	 * True when both file systems reach the same server with the same credentials and settings, so that a context
+	 * of one can be used for files of the other
+	 */
+	boolean sharesConnections(final SmbFileSystem other) {
+		return cifsContexts == other.cifsContexts;
+	}
+
+	/*
+	 * Null when listings are not filtered
+	 */
+	String getListingWildcard() {
+		return listingWildcard;
+	}
+
+	int getRandomAccessWindowSize() {
+		return randomAccessWindowSize;
+	}
+
+	long getParallelReadThreshold() {
+		return parallelReadThreshold;
+	}
+
+	/*
+	 * -1 when small files are read as any other
+	 */
+	int getSmallFileThreshold() {
+		return smallFileThreshold;
+	}
+
+	int getParallelReadParallelism() {
+		return parallelReadParallelism;
+	}
+
+	int getParallelReadChunkSize() {
+		return parallelReadChunkSize;
+	}
+
+	int getWriteBlockSize() {
+		return writeBlockSize;
+	}
+
+	int getWriteBehindParallelism() {
+		return writeBehindParallelism;
+	}
+
+	boolean isServerSideCopy() {
+		return serverSideCopy;
+	}
+
+	long getWatchCoalesceDelay() {
+		return watchCoalesceDelay;
 	}
 }
\ No newline at end of file
@@ -29,6 +29,94 @@ public class SmbFileSystemConfigBuilder extends FileSystemConfigBuilder {
 	private static final SmbFileSystemConfigBuilder BUILDER = new SmbFileSystemConfigBuilder();
 
 	private static final String CIFSCONTEXT = _PREFIX + ".CIFSCONTEXT";
+	private static final String LISTING_WILDCARD = _PREFIX + ".LISTING_WILDCARD";
+	private static final String MAX_READ_SIZE = _PREFIX + ".MAX_READ_SIZE";
+	private static final String MAX_WRITE_SIZE = _PREFIX + ".MAX_WRITE_SIZE";
+	private static final String RECEIVE_BUFFER_SIZE = _PREFIX + ".RECEIVE_BUFFER_SIZE";
+	private static final String SEND_BUFFER_SIZE = _PREFIX + ".SEND_BUFFER_SIZE";
+	private static final String CREDITS = _PREFIX + ".CREDITS";
+	private static final String SESSION_LIMIT = _PREFIX + ".SESSION_LIMIT";
+	private static final String CONNECTIONS_PER_SERVER = _PREFIX + ".CONNECTIONS_PER_SERVER";
+	private static final String RANDOM_ACCESS_WINDOW_SIZE = _PREFIX + ".RANDOM_ACCESS_WINDOW_SIZE";
+	private static final String PARALLEL_READ_THRESHOLD = _PREFIX + ".PARALLEL_READ_THRESHOLD";
+	private static final String PARALLEL_READ_PARALLELISM = _PREFIX + ".PARALLEL_READ_PARALLELISM";
+	private static final String PARALLEL_READ_CHUNK_SIZE = _PREFIX + ".PARALLEL_READ_CHUNK_SIZE";
+	private static final String WRITE_BLOCK_SIZE = _PREFIX + ".WRITE_BLOCK_SIZE";
+	private static final String WRITE_BEHIND_PARALLELISM = _PREFIX + ".WRITE_BEHIND_PARALLELISM";
+	private static final String SERVER_SIDE_COPY = _PREFIX + ".SERVER_SIDE_COPY";
+	private static final String WATCH_COALESCE_DELAY = _PREFIX + ".WATCH_COALESCE_DELAY";
+	private static final String RETRY_MAX_ATTEMPTS = _PREFIX + ".RETRY_MAX_ATTEMPTS";
+	private static final String RETRY_INITIAL_DELAY = _PREFIX + ".RETRY_INITIAL_DELAY";
+	private static final String RETRY_MAX_DELAY = _PREFIX + ".RETRY_MAX_DELAY";
+	private static final String BREAKER_FAILURE_THRESHOLD = _PREFIX + ".BREAKER_FAILURE_THRESHOLD";
+	private static final String BREAKER_COOLDOWN = _PREFIX + ".BREAKER_COOLDOWN";
+	private static final String SMALL_FILE_THRESHOLD = _PREFIX + ".SMALL_FILE_THRESHOLD";
+
+	/**
+	 * Default read-ahead window of random access content, in bytes.
+	 */
+	public static final int DEFAULT_RANDOM_ACCESS_WINDOW_SIZE = 64 * 1024;
+
+	/**
+	 * Default size from which files are read over several handles, in bytes.
+	 */
+	public static final long DEFAULT_PARALLEL_READ_THRESHOLD = 64L * 1024 * 1024;
+
+	/**
+	 * Default number of handles a large file is read through.
+	 */
+	public static final int DEFAULT_PARALLEL_READ_PARALLELISM = 4;
+
+	/**
+	 * Default bytes fetched per read when reading over several handles.
+	 */
+	public static final int DEFAULT_PARALLEL_READ_CHUNK_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Default size writes are gathered into, in bytes.
+	 */
+	public static final int DEFAULT_WRITE_BLOCK_SIZE = 1024 * 1024;
+
+	/**
+	 * Default number of blocks written at once; write-behind is off unless asked
+	 * for.
+	 */
+	public static final int DEFAULT_WRITE_BEHIND_PARALLELISM = 0;
+
+	/**
+	 * Default quiet period before watched changes are published, in milliseconds.
+	 */
+	public static final long DEFAULT_WATCH_COALESCE_DELAY = 500L;
+
+	/**
+	 * Default number of attempts of a request that fails to reach the server.
+	 */
+	public static final int DEFAULT_RETRY_MAX_ATTEMPTS = 3;
+
+	/**
+	 * Default delay before the first retry, in milliseconds.
+	 */
+	public static final long DEFAULT_RETRY_INITIAL_DELAY = 500L;
+
+	/**
+	 * Default longest delay between retries, in milliseconds.
+	 */
+	public static final long DEFAULT_RETRY_MAX_DELAY = 8000L;
+
+	/**
+	 * Default number of failed requests in a row that opens a server's breaker.
+	 */
+	public static final int DEFAULT_BREAKER_FAILURE_THRESHOLD = 5;
+
+	/**
+	 * Default time an open breaker fails requests for, in milliseconds.
+	 */
+	public static final long DEFAULT_BREAKER_COOLDOWN = 30000L;
+
+	/**
+	 * Default size up to which files are read whole when opened, in bytes.
+	 */
+	public static final int DEFAULT_SMALL_FILE_THRESHOLD = 256 * 1024;
 
 	private SmbFileSystemConfigBuilder() {
 		super("jcifsng.");
@@ -84,4 +172,462 @@ public class SmbFileSystemConfigBuilder extends FileSystemConfigBuilder {
 		setParam(opts, CIFSCONTEXT, cifsContext);
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Gets the wildcard folder listings are filtered with on the server.
+	 *
+	 * @param opts the FileSystemOptions
+	 * @return the wildcard, or {@code null} to list every child
+	 */
+	public String getListingWildcard(final FileSystemOptions opts) {
+		return getString(opts, LISTING_WILDCARD);
+	}
+
+	/**
+	 * Sets a wildcard (for example {@code *.docx}) sent with every folder listing,
+	 * so that the server only returns the matching children.
+	 * <p>
+	 * The filter applies to folders as well, so a crawl does not descend into
+	 * folders whose names do not match. {@code null} or {@code *} lists every
+	 * child.
+	 *
+	 * @param opts     The FileSystemOptions
+	 * @param wildcard the wildcard to filter listings with
+	 */
+	public void setListingWildcard(final FileSystemOptions opts, final String wildcard) {
+		setParam(opts, LISTING_WILDCARD, wildcard);
+	}
+
+	/**
+	 * Gets the largest SMB2 read asked for, see {@link #setMaxReadSize}.
+	 *
+	 * @param opts the FileSystemOptions
+	 * @return the size in bytes, or {@code null} to keep the base context's
+	 */
+	public Integer getMaxReadSize(final FileSystemOptions opts) {
+		return getInteger(opts, MAX_READ_SIZE);
+	}
+
+	/**
+	 * Sets the largest SMB2 read to ask for. jcifs bounds reads by its receive
+	 * and transaction buffers, which are grown to fit; the server's own maximum
+	 * still applies. Larger reads mean fewer round trips on large files.
+	 *
+	 * @param opts        The FileSystemOptions
+	 * @param maxReadSize the size in bytes
+	 */
+	public void setMaxReadSize(final FileSystemOptions opts, final Integer maxReadSize) {
+		setParam(opts, MAX_READ_SIZE, maxReadSize);
+	}
+
+	/**
+	 * Gets the largest SMB2 write asked for, see {@link #setMaxWriteSize}.
+	 *
+	 * @param opts the FileSystemOptions
+	 * @return the size in bytes, or {@code null} to keep the base context's
+	 */
+	public Integer getMaxWriteSize(final FileSystemOptions opts) {
+		return getInteger(opts, MAX_WRITE_SIZE);
+	}
+
+	/**
+	 * Sets the largest SMB2 write to ask for. jcifs bounds writes by its send and
+	 * transaction buffers, which are grown to fit; the server's own maximum still
+	 * applies.
+	 *
+	 * @param opts         The FileSystemOptions
+	 * @param maxWriteSize the size in bytes
+	 */
+	public void setMaxWriteSize(final FileSystemOptions opts, final Integer maxWriteSize) {
+		setParam(opts, MAX_WRITE_SIZE, maxWriteSize);
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the receive buffer size in bytes, or {@code null} to keep the base
+	 *         context's
+	 */
+	public Integer getReceiveBufferSize(final FileSystemOptions opts) {
+		return getInteger(opts, RECEIVE_BUFFER_SIZE);
+	}
+
+	/**
+	 * Sets the jcifs receive buffer size ({@code jcifs.smb.client.rcv_buf_size})
+	 * for this file system only.
+	 *
+	 * @param opts              The FileSystemOptions
+	 * @param receiveBufferSize the size in bytes
+	 */
+	public void setReceiveBufferSize(final FileSystemOptions opts, final Integer receiveBufferSize) {
+		setParam(opts, RECEIVE_BUFFER_SIZE, receiveBufferSize);
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the send buffer size in bytes, or {@code null} to keep the base
+	 *         context's
+	 */
+	public Integer getSendBufferSize(final FileSystemOptions opts) {
+		return getInteger(opts, SEND_BUFFER_SIZE);
+	}
+
+	/**
+	 * Sets the jcifs send buffer size ({@code jcifs.smb.client.snd_buf_size}) for
+	 * this file system only.
+	 *
+	 * @param opts           The FileSystemOptions
+	 * @param sendBufferSize the size in bytes
+	 */
+	public void setSendBufferSize(final FileSystemOptions opts, final Integer sendBufferSize) {
+		setParam(opts, SEND_BUFFER_SIZE, sendBufferSize);
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the credits requested, or {@code null} to keep the base context's
+	 */
+	public Integer getCredits(final FileSystemOptions opts) {
+		return getInteger(opts, CREDITS);
+	}
+
+	/**
+	 * Sets the SMB2 credits requested from the server, which bound the requests a
+	 * connection can have in flight ({@code jcifs.smb.client.maxMpxCount}, also
+	 * the SMB1 multiplex count).
+	 *
+	 * @param opts    The FileSystemOptions
+	 * @param credits the number of credits
+	 */
+	public void setCredits(final FileSystemOptions opts, final Integer credits) {
+		setParam(opts, CREDITS, credits);
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the session limit, or {@code null} to keep the base context's
+	 */
+	public Integer getSessionLimit(final FileSystemOptions opts) {
+		return getInteger(opts, SESSION_LIMIT);
+	}
+
+	/**
+	 * Sets how many sessions share one connection before jcifs opens another
+	 * ({@code jcifs.smb.client.ssnLimit}).
+	 *
+	 * @param opts         The FileSystemOptions
+	 * @param sessionLimit the number of sessions
+	 */
+	public void setSessionLimit(final FileSystemOptions opts, final Integer sessionLimit) {
+		setParam(opts, SESSION_LIMIT, sessionLimit);
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the number of connections opened to each server, 1 by default
+	 */
+	public int getConnectionsPerServer(final FileSystemOptions opts) {
+		return getInteger(opts, CONNECTIONS_PER_SERVER, 1);
+	}
+
+	/**
+	 * Sets how many connections are opened to each server for the same
+	 * credentials. Files are spread over them in turn, which helps when a single
+	 * connection's credits or TCP window are the bottleneck.
+	 *
+	 * @param opts                 The FileSystemOptions
+	 * @param connectionsPerServer the number of connections
+	 */
+	public void setConnectionsPerServer(final FileSystemOptions opts, final int connectionsPerServer) {
+		setParam(opts, CONNECTIONS_PER_SERVER, Integer.valueOf(connectionsPerServer));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the read-ahead window of random access content in bytes
+	 */
+	public int getRandomAccessWindowSize(final FileSystemOptions opts) {
+		return getInteger(opts, RANDOM_ACCESS_WINDOW_SIZE, DEFAULT_RANDOM_ACCESS_WINDOW_SIZE);
+	}
+
+	/**
+	 * Sets how much random access content reads ahead of the position whenever a
+	 * read falls outside what it has already fetched, 64 KiB by default. Larger
+	 * windows suit sequential parsing of large files, smaller ones scattered
+	 * reads. 0 reads straight from the server.
+	 *
+	 * @param opts       The FileSystemOptions
+	 * @param windowSize the window size in bytes
+	 */
+	public void setRandomAccessWindowSize(final FileSystemOptions opts, final int windowSize) {
+		setParam(opts, RANDOM_ACCESS_WINDOW_SIZE, Integer.valueOf(windowSize));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the size in bytes from which files are read over several handles
+	 */
+	public long getParallelReadThreshold(final FileSystemOptions opts) {
+		return getLong(opts, PARALLEL_READ_THRESHOLD, DEFAULT_PARALLEL_READ_THRESHOLD);
+	}
+
+	/**
+	 * Sets the size from which the input stream of a file reads it over several
+	 * handles at once, 64 MiB by default. Smaller files are read through a
+	 * single handle as before.
+	 *
+	 * @param opts      The FileSystemOptions
+	 * @param threshold the size in bytes
+	 */
+	public void setParallelReadThreshold(final FileSystemOptions opts, final long threshold) {
+		setParam(opts, PARALLEL_READ_THRESHOLD, Long.valueOf(threshold));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the number of handles large files are read through
+	 */
+	public int getParallelReadParallelism(final FileSystemOptions opts) {
+		return getInteger(opts, PARALLEL_READ_PARALLELISM, DEFAULT_PARALLEL_READ_PARALLELISM);
+	}
+
+	/**
+	 * Sets the number of handles, and so of reads in flight, large files are
+	 * read through, 4 by default. With several connections per server (see
+	 * {@link #setConnectionsPerServer}) the handles are spread over them. 1
+	 * turns parallel reads off.
+	 *
+	 * @param opts        The FileSystemOptions
+	 * @param parallelism the number of handles
+	 */
+	public void setParallelReadParallelism(final FileSystemOptions opts, final int parallelism) {
+		setParam(opts, PARALLEL_READ_PARALLELISM, Integer.valueOf(parallelism));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the bytes fetched per read when reading over several handles
+	 */
+	public int getParallelReadChunkSize(final FileSystemOptions opts) {
+		return getInteger(opts, PARALLEL_READ_CHUNK_SIZE, DEFAULT_PARALLEL_READ_CHUNK_SIZE);
+	}
+
+	/**
+	 * Sets the bytes fetched per read when reading over several handles, 4 MiB
+	 * by default. Up to twice the parallelism chunks are held in memory per
+	 * stream.
+	 *
+	 * @param opts      The FileSystemOptions
+	 * @param chunkSize the chunk size in bytes
+	 */
+	public void setParallelReadChunkSize(final FileSystemOptions opts, final int chunkSize) {
+		setParam(opts, PARALLEL_READ_CHUNK_SIZE, Integer.valueOf(chunkSize));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the size writes are gathered into, in bytes
+	 */
+	public int getWriteBlockSize(final FileSystemOptions opts) {
+		return getInteger(opts, WRITE_BLOCK_SIZE, DEFAULT_WRITE_BLOCK_SIZE);
+	}
+
+	/**
+	 * Sets the size output streams gather writes into before sending them, 1 MiB
+	 * by default, which matches the largest SMB2 WRITE most servers accept.
+	 * jcifs splits larger blocks at the negotiated maximum (see
+	 * {@link #setMaxWriteSize}).
+	 *
+	 * @param opts      The FileSystemOptions
+	 * @param blockSize the block size in bytes
+	 */
+	public void setWriteBlockSize(final FileSystemOptions opts, final int blockSize) {
+		setParam(opts, WRITE_BLOCK_SIZE, Integer.valueOf(blockSize));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the number of blocks an output stream writes at once
+	 */
+	public int getWriteBehindParallelism(final FileSystemOptions opts) {
+		return getInteger(opts, WRITE_BEHIND_PARALLELISM, DEFAULT_WRITE_BEHIND_PARALLELISM);
+	}
+
+	/**
+	 * Sets how many blocks an output stream keeps in flight behind the caller,
+	 * each through a handle of its own. 0, the default, writes synchronously
+	 * through a plain SmbFileOutputStream; 1 still gathers writes into blocks but
+	 * sends one at a time; 4 suits most high-latency links.
+	 * <p>
+	 * The write-behind handles are opened for reading and writing, so the
+	 * credentials need read access to the files written. Leave this at 0 for
+	 * write-only folders.
+	 *
+	 * @param opts        The FileSystemOptions
+	 * @param parallelism the number of blocks in flight
+	 */
+	public void setWriteBehindParallelism(final FileSystemOptions opts, final int parallelism) {
+		setParam(opts, WRITE_BEHIND_PARALLELISM, Integer.valueOf(parallelism));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return whether copies within a share are made by the server
+	 */
+	public boolean isServerSideCopy(final FileSystemOptions opts) {
+		return getBoolean(opts, SERVER_SIDE_COPY, true);
+	}
+
+	/**
+	 * Sets whether {@code copyFrom} between files of the same share, reached
+	 * with the same credentials, lets the server copy the content instead of
+	 * streaming it through this JVM. On by default; servers that do not support
+	 * it are streamed from anyway.
+	 *
+	 * @param opts           The FileSystemOptions
+	 * @param serverSideCopy whether to copy on the server
+	 */
+	public void setServerSideCopy(final FileSystemOptions opts, final boolean serverSideCopy) {
+		setParam(opts, SERVER_SIDE_COPY, Boolean.valueOf(serverSideCopy));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the quiet period before watched changes are published, in
+	 *         milliseconds
+	 */
+	public long getWatchCoalesceDelay(final FileSystemOptions opts) {
+		return getLong(opts, WATCH_COALESCE_DELAY, DEFAULT_WATCH_COALESCE_DELAY);
+	}
+
+	/**
+	 * Sets how long an {@link SmbChangeWatcher} waits for more notifications
+	 * before publishing the changes it has, 500 ms by default. Longer delays
+	 * merge more of the writes of one file into a single event.
+	 *
+	 * @param opts  The FileSystemOptions
+	 * @param delay the delay in milliseconds
+	 */
+	public void setWatchCoalesceDelay(final FileSystemOptions opts, final long delay) {
+		setParam(opts, WATCH_COALESCE_DELAY, Long.valueOf(delay));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the number of attempts of a request that fails to reach the server
+	 */
+	public int getRetryMaxAttempts(final FileSystemOptions opts) {
+		return getInteger(opts, RETRY_MAX_ATTEMPTS, DEFAULT_RETRY_MAX_ATTEMPTS);
+	}
+
+	/**
+	 * Sets how many times attaching, querying or listing a file, or opening it
+	 * for reading or writing, is tried when the server cannot be reached, 3 by
+	 * default. Errors the server answers with, such as access denied, are never
+	 * retried, nor are reads and writes on a file already open.
+	 *
+	 * @param opts        The FileSystemOptions
+	 * @param maxAttempts the number of attempts, 1 for no retry
+	 */
+	public void setRetryMaxAttempts(final FileSystemOptions opts, final int maxAttempts) {
+		setParam(opts, RETRY_MAX_ATTEMPTS, Integer.valueOf(maxAttempts));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the delay before the first retry, in milliseconds
+	 */
+	public long getRetryInitialDelay(final FileSystemOptions opts) {
+		return getLong(opts, RETRY_INITIAL_DELAY, DEFAULT_RETRY_INITIAL_DELAY);
+	}
+
+	/**
+	 * Sets the delay before the first retry, 500 ms by default. It doubles with
+	 * every further retry, and each delay is picked at random in the upper half
+	 * of its value so that threads failing together spread out.
+	 *
+	 * @param opts  The FileSystemOptions
+	 * @param delay the delay in milliseconds
+	 */
+	public void setRetryInitialDelay(final FileSystemOptions opts, final long delay) {
+		setParam(opts, RETRY_INITIAL_DELAY, Long.valueOf(delay));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the longest delay between retries, in milliseconds
+	 */
+	public long getRetryMaxDelay(final FileSystemOptions opts) {
+		return getLong(opts, RETRY_MAX_DELAY, DEFAULT_RETRY_MAX_DELAY);
+	}
+
+	/**
+	 * Sets the longest delay between retries, 8 s by default.
+	 *
+	 * @param opts  The FileSystemOptions
+	 * @param delay the delay in milliseconds
+	 */
+	public void setRetryMaxDelay(final FileSystemOptions opts, final long delay) {
+		setParam(opts, RETRY_MAX_DELAY, Long.valueOf(delay));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the number of failed requests in a row that opens a server's
+	 *         breaker
+	 */
+	public int getBreakerFailureThreshold(final FileSystemOptions opts) {
+		return getInteger(opts, BREAKER_FAILURE_THRESHOLD, DEFAULT_BREAKER_FAILURE_THRESHOLD);
+	}
+
+	/**
+	 * Sets after how many requests in a row failed to reach a server, retries
+	 * included, its {@link SmbServerBreaker} opens, 5 by default.
+	 *
+	 * @param opts      The FileSystemOptions
+	 * @param threshold the number of failures
+	 */
+	public void setBreakerFailureThreshold(final FileSystemOptions opts, final int threshold) {
+		setParam(opts, BREAKER_FAILURE_THRESHOLD, Integer.valueOf(threshold));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the time an open breaker fails requests for, in milliseconds
+	 */
+	public long getBreakerCooldown(final FileSystemOptions opts) {
+		return getLong(opts, BREAKER_COOLDOWN, DEFAULT_BREAKER_COOLDOWN);
+	}
+
+	/**
+	 * Sets how long requests to a server whose breaker opened fail at once
+	 * before the server is probed again, 30 s by default.
+	 *
+	 * @param opts     The FileSystemOptions
+	 * @param cooldown the cooldown in milliseconds
+	 */
+	public void setBreakerCooldown(final FileSystemOptions opts, final long cooldown) {
+		setParam(opts, BREAKER_COOLDOWN, Long.valueOf(cooldown));
+	}
+
+	/**
+	 * @param opts the FileSystemOptions
+	 * @return the size up to which files are read whole when opened, in bytes
+	 */
+	public int getSmallFileThreshold(final FileSystemOptions opts) {
+		return getInteger(opts, SMALL_FILE_THRESHOLD, DEFAULT_SMALL_FILE_THRESHOLD);
+	}
+
+	/**
+	 * Sets the size up to which a file is read whole as soon as its input stream
+	 * is opened, 256 KiB by default, at most 64 MiB. Opening, reading and closing
+	 * such a file then takes three round trips, and a single READ when the file
+	 * fits the negotiated maximum read size (see {@link #setMaxReadSize}),
+	 * however small the buffer the caller reads with. A negative value turns this
+	 * off.
+	 *
+	 * @param opts      The FileSystemOptions
+	 * @param threshold the size in bytes
+	 */
+	public void setSmallFileThreshold(final FileSystemOptions opts, final int threshold) {
+		setParam(opts, SMALL_FILE_THRESHOLD, Integer.valueOf(threshold));
+	}
+}
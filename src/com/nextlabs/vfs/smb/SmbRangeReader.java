@@ -0,0 +1,29 @@
+package com.nextlabs.vfs.smb;
+
+import java.io.IOException;
+
+import jcifs.smb.SmbRandomAccessFile;
+
+import com.nextlabs.vfs.io.RangeReader;
+
+/**
+ * Reads ranges of an SMB file through a handle of its own.
+ */
+class SmbRangeReader implements RangeReader {
+	private final SmbRandomAccessFile raf;
+
+	SmbRangeReader(final SmbRandomAccessFile raf) {
+		this.raf = raf;
+	}
+
+	@Override
+	public int read(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+		raf.seek(position);
+		return raf.read(buffer, offset, length);
+	}
+
+	@Override
+	public void close() throws IOException {
+		raf.close();
+	}
+}
@@ -0,0 +1,154 @@
+package com.nextlabs.vfs.smb;
+
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import jcifs.smb.NtStatus;
+import jcifs.smb.SmbException;
+import jcifs.util.transport.TransportException;
+
+/*
+ * Retries the requests of a file system that fail to reach the server, with exponential backoff and jitter, a bounded
+ * number of times, and feeds the outcome to the server's circuit breaker.
+ *
+ * Only failures to reach the server are retried and counted: a request the server answered with an error, e.g.
+ * access denied, is a success as far as the breaker is concerned and fails at once. A request interrupted, or failed
+ * before anything was heard from the server, tells nothing either way and only gives up the probe it may have been.
+ *
+ * File systems run attaching, querying and listing files, and opening handles on them, through here. Reads and writes
+ * on an open handle are not retried, as the handle does not survive the connection it was opened on.
+ */
+final class SmbRetryPolicy {
+	private static final Logger log = LogManager.getLogger(SmbRetryPolicy.class);
+
+	private final SmbServerBreaker breaker;
+	private final int maxAttempts;
+	private final long initialDelay;
+	private final long maxDelay;
+	private final int failureThreshold;
+	private final long cooldown;
+
+	SmbRetryPolicy(final String server, final FileSystemOptions opts) {
+		final SmbFileSystemConfigBuilder builder = SmbFileSystemConfigBuilder.getInstance();
+		this.breaker = SmbServerBreaker.forServer(server);
+		this.maxAttempts = Math.max(1, builder.getRetryMaxAttempts(opts));
+		this.initialDelay = Math.max(0, builder.getRetryInitialDelay(opts));
+		this.maxDelay = Math.max(initialDelay, builder.getRetryMaxDelay(opts));
+		this.failureThreshold = Math.max(1, builder.getBreakerFailureThreshold(opts));
+		this.cooldown = Math.max(0, builder.getBreakerCooldown(opts));
+	}
+
+	SmbServerBreaker getBreaker() {
+		return breaker;
+	}
+
+	/*
+	 * Runs a request against the server. Fails at once with a FileSystemException while the breaker is open.
+	 */
+	<T> T call(final FileName name, final Callable<T> request) throws Exception {
+		for (int attempt = 1;; attempt++) {
+			if (!breaker.tryAcquire()) {
+				throw new FileSystemException("vfs.provider.smb/server-unavailable.error", name, breaker.getServer());
+			}
+			try {
+				final T result = request.call();
+				breaker.onSuccess();
+				return result;
+			} catch (final Exception e) {
+				if (isInterrupted(e)) {
+					breaker.onAbandoned();
+					throw e;
+				}
+				if (!isUnreachable(e)) {
+					if (isAnswered(e)) {
+						breaker.onSuccess();
+					} else {
+						breaker.onAbandoned();
+					}
+					throw e;
+				}
+				breaker.onFailure(failureThreshold, cooldown);
+				if (attempt >= maxAttempts || breaker.getState() != SmbServerBreaker.State.CLOSED) {
+					throw e;
+				}
+				final long delay = delay(attempt);
+				if (log.isDebugEnabled()) {
+					log.debug("Failed to reach " + breaker.getServer() + " for " + name + " (attempt " + attempt + " of " + maxAttempts + "), retrying in " + delay + " ms", e);
+				}
+				try {
+					Thread.sleep(delay);
+				} catch (final InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while retrying " + name);
+				}
+			} catch (final Error e) {
+				breaker.onAbandoned();
+				throw e;
+			}
+		}
+	}
+
+	/*
+	 * Doubles from the initial delay up to the maximum, then picks at random in its upper half so that the threads
+	 * that failed together do not all come back at the same time
+	 */
+	private long delay(final int attempt) {
+		final long ceiling = Math.min(maxDelay, initialDelay << Math.min(attempt - 1, 30));
+		return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+	}
+
+	/*
+	 * Interruptions of the calling thread, as opposed to timeouts, which jcifs also reports as InterruptedIOExceptions
+	 */
+	static boolean isInterrupted(final Throwable e) {
+		if (Thread.currentThread().isInterrupted()) {
+			return true;
+		}
+		for (Throwable cause = e; cause != null && cause != cause.getCause(); cause = cause.getCause()) {
+			if (cause instanceof InterruptedException || (cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Errors the server answered with, which show it reachable
+	 */
+	static boolean isAnswered(final Throwable e) {
+		for (Throwable cause = e; cause != null && cause != cause.getCause(); cause = cause.getCause()) {
+			if (cause instanceof SmbException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Connection failures, timeouts and dropped sessions, as opposed to errors the server answered with
+	 */
+	static boolean isUnreachable(final Throwable e) {
+		for (Throwable cause = e; cause != null && cause != cause.getCause(); cause = cause.getCause()) {
+			if (cause instanceof TransportException || cause instanceof SocketException || cause instanceof SocketTimeoutException || cause instanceof UnknownHostException) {
+				return true;
+			}
+			if (cause instanceof SmbException) {
+				final int status = ((SmbException) cause).getNtStatus();
+				if (status == NtStatus.NT_STATUS_NETWORK_NAME_DELETED || status == NtStatus.NT_STATUS_PIPE_BROKEN || status == NtStatus.NT_STATUS_CONNECTION_REFUSED) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,148 @@
+package com.nextlabs.vfs.smb;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Circuit breaker of one SMB server, shared by every file system on it.
+ * <p>
+ * After {@link SmbFileSystemConfigBuilder#setBreakerFailureThreshold
+ * threshold} requests in a row failed to reach the server, even after their
+ * retries, the breaker opens and requests to the server fail at once instead
+ * of waiting for connection timeouts. Once the cooldown has passed a single
+ * request is let through as a probe: the breaker closes again if it reaches
+ * the server and opens for another cooldown if it does not. A probe that is
+ * interrupted, or fails before hearing from the server, leaves the probing to
+ * the next request.
+ * <p>
+ * The states of all servers can be read through {@link #getStates()}, e.g. to
+ * report repositories that are down.
+ */
+public final class SmbServerBreaker {
+	private static final Logger log = LogManager.getLogger(SmbServerBreaker.class);
+
+	private static final ConcurrentMap<String, SmbServerBreaker> breakers = new ConcurrentHashMap<String, SmbServerBreaker>();
+
+	public enum State {
+		/** Requests go through. */
+		CLOSED,
+		/** Requests fail at once until the cooldown has passed. */
+		OPEN,
+		/** A probe request is on its way; the others fail at once. */
+		HALF_OPEN
+	}
+
+	private final String server;
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openUntil;
+
+	private SmbServerBreaker(String server) {
+		this.server = server;
+	}
+
+	/*
+	 * The breaker of a server, created closed on first use
+	 */
+	static SmbServerBreaker forServer(String server) {
+		final String key = server == null ? "" : server.toLowerCase();
+		SmbServerBreaker breaker = breakers.get(key);
+		if (breaker == null) {
+			final SmbServerBreaker created = new SmbServerBreaker(key);
+			breaker = breakers.putIfAbsent(key, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	/**
+	 * @return The state of every server contacted so far, by host name.
+	 */
+	public static Map<String, State> getStates() {
+		final Map<String, State> states = new TreeMap<String, State>();
+		for (SmbServerBreaker breaker : breakers.values()) {
+			states.put(breaker.server, breaker.getState());
+		}
+		return states;
+	}
+
+	/**
+	 * @return The state of a server, CLOSED if it was never contacted.
+	 */
+	public static State getState(String server) {
+		final SmbServerBreaker breaker = breakers.get(server == null ? "" : server.toLowerCase());
+		return breaker == null ? State.CLOSED : breaker.getState();
+	}
+
+	public String getServer() {
+		return server;
+	}
+
+	/**
+	 * @return The current state. An open breaker whose cooldown has passed is
+	 *         still reported OPEN until the next request probes the server.
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/*
+	 * Whether a request may go to the server. Past the cooldown of an open breaker the first caller becomes the probe.
+	 */
+	synchronized boolean tryAcquire() {
+		switch (state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (System.currentTimeMillis() < openUntil) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			if (log.isDebugEnabled()) {
+				log.debug("Probing SMB server " + server);
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	synchronized void onSuccess() {
+		if (state != State.CLOSED) {
+			log.info("SMB server " + server + " is reachable again");
+		}
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+	}
+
+	synchronized void onFailure(int threshold, long cooldown) {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= threshold)) {
+			if (state == State.CLOSED) {
+				log.warn("SMB server " + server + " failed " + consecutiveFailures + " times in a row, failing its requests for " + cooldown + " ms");
+			}
+			state = State.OPEN;
+			openUntil = System.currentTimeMillis() + cooldown;
+		}
+	}
+
+	/*
+	 * Lets a probe that ended without reaching the server (e.g. interrupted) be retried by the next caller
+	 */
+	synchronized void onAbandoned() {
+		if (state == State.HALF_OPEN) {
+			state = State.OPEN;
+		}
+	}
+}
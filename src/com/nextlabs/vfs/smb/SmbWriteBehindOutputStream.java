@@ -0,0 +1,261 @@
+package com.nextlabs.vfs.smb;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import jcifs.smb.SmbException;
+import jcifs.smb.SmbRandomAccessFile;
+
+import com.nextlabs.vfs.AsyncFileSystemManager;
+
+/**
+ * Writes an SMB file behind the caller.
+ * <p>
+ * Writes are gathered into blocks of {@code blockSize} bytes, whatever size the
+ * caller writes in. A full block is handed to a background writer and the
+ * caller carries on filling the next one, so that up to {@code parallelism}
+ * blocks are on the wire at once, each through a handle of its own and at its
+ * own offset. The caller only waits when all of them are busy.
+ * <p>
+ * {@link #flush()} and {@link #close()} return once every block written so far
+ * has been acknowledged by the server; close then trims a preallocated file to
+ * the length actually written and closes the handles. The first failed write
+ * is thrown from the next write, flush or close.
+ */
+class SmbWriteBehindOutputStream extends OutputStream {
+	private static final Logger logger = LogManager.getLogger(SmbWriteBehindOutputStream.class);
+
+	/*
+	 * Opens another handle on the file being written
+	 */
+	interface Opener {
+		SmbRandomAccessFile open() throws IOException;
+	}
+
+	private final Opener opener;
+	private final int blockSize;
+	private final int parallelism;
+	private final Executor executor = AsyncFileSystemManager.getSharedExecutor();
+	private final BlockingQueue<SmbRandomAccessFile> idleHandles;
+	private final BlockingQueue<byte[]> freeBuffers;
+	private final Semaphore inFlight;
+	private final long preallocated;
+	private int handles;
+	private volatile Throwable failure;
+	private boolean closed;
+
+	private byte[] buffer;
+	private int count;
+	// File offset of the first byte of the buffer
+	private long position;
+
+	/**
+	 * @param first          The first handle, used to size the file before any
+	 *                       write. Others are opened when needed.
+	 * @param append         Whether to write after the current end of the file
+	 *                       rather than replace its content.
+	 * @param expectedLength Length the written content is expected to reach, set
+	 *                       on the file up front so that the server can allocate
+	 *                       it in one go, or a negative value if not known.
+	 */
+	SmbWriteBehindOutputStream(final SmbRandomAccessFile first, final Opener opener, final boolean append, final long expectedLength, final int blockSize, final int parallelism)
+			throws SmbException {
+		this.opener = opener;
+		this.blockSize = blockSize;
+		this.parallelism = parallelism;
+		this.idleHandles = new ArrayBlockingQueue<SmbRandomAccessFile>(parallelism);
+		this.freeBuffers = new ArrayBlockingQueue<byte[]>(parallelism + 1);
+		this.inFlight = new Semaphore(parallelism);
+
+		this.position = append ? first.length() : 0;
+		if (expectedLength >= 0) {
+			first.setLength(position + expectedLength);
+			this.preallocated = position + expectedLength;
+		} else {
+			if (!append) {
+				first.setLength(0);
+			}
+			this.preallocated = -1;
+		}
+		idleHandles.add(first);
+		handles = 1;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		ensureOpen();
+		if (buffer == null) {
+			buffer = takeBuffer();
+		}
+		buffer[count++] = (byte) b;
+		if (count == blockSize) {
+			submit();
+		}
+	}
+
+	@Override
+	public void write(final byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			if (buffer == null) {
+				buffer = takeBuffer();
+			}
+			final int n = Math.min(len, blockSize - count);
+			System.arraycopy(b, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == blockSize) {
+				submit();
+			}
+		}
+	}
+
+	private byte[] takeBuffer() {
+		final byte[] free = freeBuffers.poll();
+		return free == null ? new byte[blockSize] : free;
+	}
+
+	/*
+	 * Hands the buffer to a background writer, waiting for one to be free
+	 */
+	private void submit() throws IOException {
+		if (count == 0) {
+			return;
+		}
+		try {
+			inFlight.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		final byte[] block = buffer;
+		final int length = count;
+		final long offset = position;
+		buffer = null;
+		count = 0;
+		position += length;
+
+		final SmbRandomAccessFile handle;
+		try {
+			handle = takeHandle();
+		} catch (final IOException e) {
+			inFlight.release();
+			throw e;
+		}
+		executor.execute(() -> {
+			try {
+				handle.seek(offset);
+				handle.write(block, 0, length);
+			} catch (final Throwable e) {
+				if (failure == null) {
+					failure = e;
+				}
+			} finally {
+				idleHandles.offer(handle);
+				freeBuffers.offer(block);
+				inFlight.release();
+			}
+		});
+		checkFailure();
+	}
+
+	/*
+	 * An idle handle, or a new one while fewer than parallelism are open. Called with a permit held, so one is
+	 * always idle once all are open.
+	 */
+	private SmbRandomAccessFile takeHandle() throws IOException {
+		final SmbRandomAccessFile idle = idleHandles.poll();
+		if (idle != null) {
+			return idle;
+		}
+		if (handles < parallelism) {
+			// Counted once open, so that a failed open can be tried again
+			final SmbRandomAccessFile opened = opener.open();
+			handles++;
+			return opened;
+		}
+		try {
+			return idleHandles.take();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/*
+	 * Waits until every block handed out so far has been written
+	 */
+	private void drain() throws IOException {
+		try {
+			inFlight.acquire(parallelism);
+			inFlight.release(parallelism);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		final Throwable e = failure;
+		if (e != null) {
+			throw e instanceof IOException ? (IOException) e : new IOException(e);
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		checkFailure();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		submit();
+		drain();
+		checkFailure();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			submit();
+			drain();
+			checkFailure();
+			if (preallocated >= 0 && position != preallocated) {
+				// Expected more, or less, than was written
+				final SmbRandomAccessFile handle = idleHandles.peek();
+				if (handle != null) {
+					handle.setLength(position);
+				}
+			}
+		} finally {
+			closed = true;
+			// Lets writes still running after a failure give their handles back
+			inFlight.acquireUninterruptibly(parallelism);
+			SmbRandomAccessFile handle;
+			while ((handle = idleHandles.poll()) != null) {
+				try {
+					handle.close();
+				} catch (final SmbException e) {
+					logger.debug(e.getMessage(), e);
+				}
+			}
+			freeBuffers.clear();
+			buffer = null;
+		}
+	}
+}
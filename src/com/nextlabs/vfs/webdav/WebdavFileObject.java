@@ -7,10 +7,19 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.httpclient.Cookie;
 import org.apache.commons.httpclient.Header;
@@ -23,6 +32,7 @@ import org.apache.commons.httpclient.methods.HeadMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.params.DefaultHttpParams;
 import org.apache.commons.httpclient.params.HttpParams;
+import org.apache.commons.httpclient.util.DateParseException;
 import org.apache.commons.httpclient.util.DateUtil;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -35,6 +45,7 @@ import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileType;
 import org.apache.commons.vfs2.NameScope;
 import org.apache.commons.vfs2.provider.AbstractFileName;
+import org.apache.commons.vfs2.provider.AbstractFileObject;
 import org.apache.commons.vfs2.provider.DefaultFileContent;
 import org.apache.commons.vfs2.provider.UriParser;
 import org.apache.commons.vfs2.provider.http.HttpFileObject;
@@ -71,11 +82,16 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.w3c.dom.Node;
 
+import com.nextlabs.vfs.ChildIterator;
+import com.nextlabs.vfs.ListingMetadata;
+import com.nextlabs.vfs.StreamingListing;
 import com.nextlabs.vfs.URLFileName;
 import com.nextlabs.vfs.authentication.SharepointOnline;
+import com.nextlabs.vfs.cache.FilesCacheConfigBuilder;
 import com.nextlabs.vfs.constant.AuthType;
+import com.nextlabs.vfs.constant.SCConstant;
 
-public class WebdavFileObject extends HttpFileObject<WebdavFileSystem> {
+public class WebdavFileObject extends HttpFileObject<WebdavFileSystem> implements StreamingListing {
 
 	static class HttpInputStream extends MonitorInputStream {
 		private static final Logger logger = LogManager.getLogger(HttpInputStream.class);
@@ -131,6 +147,12 @@ public class WebdavFileObject extends HttpFileObject<WebdavFileSystem> {
 	public static final DavPropertyName RESPONSE_CHARSET = DavPropertyName.create("response-charset");
 	private final WebdavFileSystemConfigBuilder builder;
 	private final WebdavFileSystem fileSystem;
+	// Fetched once per attach, so that a cached file does not repeat the PROPFIND and HEAD requests
+	private volatile Long contentSize;
+	private volatile Long lastModifiedTime;
+	private volatile String etag;
+	// Properties of this file from the PROPFIND listing of its parent, see ListingMetadata
+	private volatile ListingMetadata listed;
 
 	protected WebdavFileObject(final AbstractFileName name, final WebdavFileSystem fileSystem) {
 		super(new URLFileName((org.apache.commons.vfs2.provider.URLFileName) name), fileSystem);
@@ -309,42 +331,189 @@ public class WebdavFileObject extends HttpFileObject<WebdavFileSystem> {
 
 	@Override
 	protected FileObject[] doListChildrenResolved() throws Exception {
+		final List<FileObject> vfs = new ArrayList<>();
+		try (ChildIterator children = iterateChildren()) {
+			while (children.hasNext()) {
+				vfs.add(FileObjectUtils.getAbstractFileObject(children.next()));
+			}
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return vfs.toArray(new WebdavFileObject[vfs.size()]);
+	}
+
+	/**
+	 * Lists the children with a Depth 1 PROPFIND whose multistatus response is
+	 * parsed as it arrives, so no DOM of the whole listing is ever built and the
+	 * first child is available as soon as its response element has been read.
+	 * Each child is seeded with the resource type, length, last-modified time and
+	 * ETag from its response.
+	 */
+	@Override
+	public ChildIterator iterateChildren() throws FileSystemException {
+		final URLFileName name = (URLFileName) getName();
 		PropFindMethod method = null;
 		try {
-			final URLFileName name = (URLFileName) getName();
-			if (isDirectory(name)) {
-				final DavPropertyNameSet nameSet = new DavPropertyNameSet();
-				nameSet.add(DavPropertyName.create(DavConstants.PROPERTY_DISPLAYNAME));
+			if (!isDirectory(name)) {
+				throw new FileNotFolderException(getName());
+			}
+			// Everything a crawl asks of each child next, so that it does not have to ask the server again
+			final DavPropertyNameSet nameSet = new DavPropertyNameSet();
+			nameSet.add(DavPropertyName.create(DavConstants.PROPERTY_DISPLAYNAME));
+			nameSet.add(DavPropertyName.create(DavConstants.PROPERTY_RESOURCETYPE));
+			nameSet.add(DavPropertyName.create(DavConstants.PROPERTY_GETCONTENTLENGTH));
+			nameSet.add(DavPropertyName.create(DavConstants.PROPERTY_GETLASTMODIFIED));
+			nameSet.add(DavPropertyName.create(DavConstants.PROPERTY_GETETAG));
+
+			method = new PropFindMethod(toUrlString(name), nameSet, DavConstants.DEPTH_1);
+			setupMethod(method);
+			addCookiesToMethod(method);
+			// Not through execute(), which releases the connection the listing is still to be streamed from
+			final int status = fileSystem.getClient().executeMethod(method);
+			if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE) {
+				throw new FileNotFoundException(method.getURI());
+			}
+			if (status != HttpStatus.SC_MULTI_STATUS) {
+				throw new FileSystemException("vfs.provider.webdav/list-children.error", status + " " + method.getStatusText());
+			}
+			return new MultiStatusChildIterator(method, name);
+		} catch (final FileSystemException fse) {
+			if (method != null) {
+				method.releaseConnection();
+			}
+			throw fse;
+		} catch (final IOException | XMLStreamException e) {
+			if (method != null) {
+				method.releaseConnection();
+			}
+			throw new FileSystemException(e.getMessage(), e);
+		}
+	}
 
-				method = new PropFindMethod(toUrlString(name), nameSet, DavConstants.DEPTH_1);
-				setupMethod(method);
-				execute(method);
-				final List<WebdavFileObject> vfs = new ArrayList<>();
-				if (method.succeeded()) {
-					final MultiStatusResponse[] responses = method.getResponseBodyAsMultiStatus().getResponses();
+	private class MultiStatusChildIterator implements ChildIterator {
+		private final PropFindMethod method;
+		private final URLFileName name;
+		private final XMLStreamReader reader;
+		private final long validity;
+		private FileObject next;
+		private boolean closed;
+		private int depth;
+		private int responseDepth = -1;
+		// Properties of the response element being read
+		private String href;
+		private boolean collection;
+		private String contentLength;
+		private String lastModified;
+		private String etag;
+
+		MultiStatusChildIterator(final PropFindMethod method, final URLFileName name) throws IOException, XMLStreamException {
+			this.method = method;
+			this.name = name;
+			this.validity = FilesCacheConfigBuilder.getInstance().getListingValidity(getFileSystem().getFileSystemOptions());
+			final XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+			this.reader = factory.createXMLStreamReader(method.getResponseBodyAsStream());
+		}
 
-					for (final MultiStatusResponse response : responses) {
-						if (isCurrentFile(response.getHref(), name)) {
-							continue;
+		@Override
+		public boolean hasNext() {
+			try {
+				while (next == null && !closed) {
+					final int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						depth++;
+						if (DavConstants.NAMESPACE.getURI().equals(reader.getNamespaceURI())) {
+							final String element = reader.getLocalName();
+							if (DavConstants.XML_RESPONSE.equals(element)) {
+								responseDepth = depth;
+								href = null;
+								collection = false;
+								contentLength = null;
+								lastModified = null;
+								etag = null;
+							} else if (DavConstants.XML_HREF.equals(element) && depth == responseDepth + 1) {
+								href = readText();
+							} else if (DavConstants.XML_COLLECTION.equals(element)) {
+								collection = true;
+							} else if (DavConstants.PROPERTY_GETCONTENTLENGTH.equals(element)) {
+								contentLength = readText();
+							} else if (DavConstants.PROPERTY_GETLASTMODIFIED.equals(element)) {
+								lastModified = readText();
+							} else if (DavConstants.PROPERTY_GETETAG.equals(element)) {
+								etag = readText();
+							}
 						}
-						final String resourceName = resourceName(response.getHref());
-						if (resourceName != null && resourceName.length() > 0) {
-							final WebdavFileObject fo = (WebdavFileObject) FileObjectUtils.getAbstractFileObject(getFileSystem().resolveFile(getFileSystem().getFileSystemManager().resolveName(getName(), UriParser.decode(resourceName), NameScope.CHILD)));
-							vfs.add(fo);
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						if (depth == responseDepth && href != null) {
+							next = toFileObject();
 						}
+						depth--;
+					} else if (event == XMLStreamConstants.END_DOCUMENT) {
+						close();
 					}
 				}
-				return vfs.toArray(new WebdavFileObject[vfs.size()]);
+			} catch (final XMLStreamException e) {
+				close();
+				throw new UncheckedIOException(new FileSystemException(e.getMessage(), e));
+			} catch (final FileSystemException e) {
+				close();
+				throw new UncheckedIOException(e);
 			}
-			throw new FileNotFolderException(getName());
-		} catch (final FileNotFolderException fnfe) {
-			throw fnfe;
-		} catch (final DavException e) {
-			throw new FileSystemException(e.getMessage(), e);
-		} catch (final IOException e) {
-			throw new FileSystemException(e.getMessage(), e);
-		} finally {
-			if (method != null) {
+			return next != null;
+		}
+
+		// Reads a text-only element, leaving the reader on its end tag. Empty elements (e.g. properties the server
+		// reports as not found) come back as null.
+		private String readText() throws XMLStreamException {
+			final String text = reader.getElementText().trim();
+			depth--;
+			return text.isEmpty() ? null : text;
+		}
+
+		private FileObject toFileObject() throws FileSystemException {
+			if (isCurrentFile(href, name)) {
+				return null;
+			}
+			final String resourceName = resourceName(href);
+			if (resourceName != null && resourceName.length() > 0) {
+				final FileObject res = getFileSystem().resolveFile(getFileSystem().getFileSystemManager().resolveName(getName(), UriParser.decode(resourceName), NameScope.CHILD));
+				final AbstractFileObject<?> child = FileObjectUtils.getAbstractFileObject(res);
+				if (child instanceof WebdavFileObject) {
+					Long size = null;
+					Long time = null;
+					try {
+						size = contentLength == null || collection ? null : Long.valueOf(contentLength);
+						time = lastModified == null ? null : Long.valueOf(DateUtil.parseDate(lastModified).getTime());
+					} catch (final NumberFormatException | DateParseException e) {
+						logger.debug(e.getMessage(), e);
+					}
+					((WebdavFileObject) child).seed(new ListingMetadata(collection ? FileType.FOLDER : FileType.FILE, size, time, etag, validity));
+				}
+				return res;
+			}
+			return null;
+		}
+
+		@Override
+		public FileObject next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final FileObject res = next;
+			next = null;
+			return res;
+		}
+
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				try {
+					reader.close();
+				} catch (final XMLStreamException e) {
+					logger.debug(e.getMessage(), e);
+				}
 				method.releaseConnection();
 			}
 		}
@@ -398,6 +567,10 @@ public class WebdavFileObject extends HttpFileObject<WebdavFileSystem> {
 	@SuppressWarnings("finally")
 	@Override
 	protected FileType doGetType() throws Exception {
+		final ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null && listing.getType() != null) {
+			return listing.getType();
+		}
 		// Use the HEAD method to probe the file.
 		int status = 0;
 		try {
@@ -437,9 +610,52 @@ public class WebdavFileObject extends HttpFileObject<WebdavFileSystem> {
 		}
 	}
 
+	@Override
+	protected void doDetach() throws Exception {
+		super.doDetach();
+		contentSize = null;
+		lastModifiedTime = null;
+		etag = null;
+	}
+
+	@Override
+	protected void onChange() throws Exception {
+		super.onChange();
+		contentSize = null;
+		lastModifiedTime = null;
+		etag = null;
+		listed = null;
+	}
+
+	void seed(final ListingMetadata metadata) {
+		listed = metadata;
+	}
+
+	// Takes whatever the listing provided while it is still fresh
+	private void applyListing() {
+		final ListingMetadata listing = ListingMetadata.fresh(listed);
+		if (listing != null) {
+			if (contentSize == null) {
+				contentSize = listing.getSize();
+			}
+			if (lastModifiedTime == null) {
+				lastModifiedTime = listing.getLastModified();
+			}
+			if (etag == null) {
+				etag = listing.getEtag();
+			}
+		}
+	}
+
 	@Override
 	protected long doGetContentSize() throws Exception {
-		return Long.parseLong((String) getProperties((URLFileName) getName()).get(DavConstants.PROPERTY_GETCONTENTLENGTH).getValue());
+		applyListing();
+		Long size = contentSize;
+		if (size == null) {
+			size = Long.valueOf(Long.parseLong((String) getProperties((URLFileName) getName()).get(DavConstants.PROPERTY_GETCONTENTLENGTH).getValue()));
+			contentSize = size;
+		}
+		return size.longValue();
 	}
 
 	@Override
@@ -453,11 +669,38 @@ public class WebdavFileObject extends HttpFileObject<WebdavFileSystem> {
 
 	@Override
 	protected long doGetLastModifiedTime() throws Exception {
-		final Header header = headMethod(toUrlString((URLFileName) getName())).getResponseHeader("last-modified");
-		if (header == null) {
+		applyListing();
+		Long time = lastModifiedTime;
+		if (time == null) {
+			loadHeadMetadata();
+			time = lastModifiedTime;
+		}
+		return time.longValue();
+	}
+
+	@Override
+	protected Map<String, Object> doGetAttributes() throws Exception {
+		applyListing();
+		if (lastModifiedTime == null) {
+			loadHeadMetadata();
+		}
+		Map<String, Object> attributes = new HashMap<String, Object>();
+		if (etag != null) {
+			attributes.put(SCConstant.ETAG_ATTRIBUTE, etag);
+		}
+		return attributes;
+	}
+
+	// A single HEAD request gives both the last-modified time and the ETag
+	private void loadHeadMetadata() throws Exception {
+		final HeadMethod method = headMethod(toUrlString((URLFileName) getName()));
+		final Header lastModified = method.getResponseHeader("last-modified");
+		if (lastModified == null) {
 			throw new FileSystemException("vfs.provider.http/last-modified.error", getName());
 		}
-		return DateUtil.parseDate(header.getValue()).getTime();
+		final Header etagHeader = method.getResponseHeader("etag");
+		etag = etagHeader == null ? null : etagHeader.getValue();
+		lastModifiedTime = Long.valueOf(DateUtil.parseDate(lastModified.getValue()).getTime());
 	}
 
 	protected void execute(final HttpMethod method) throws FileSystemException {
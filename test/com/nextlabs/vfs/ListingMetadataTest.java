@@ -0,0 +1,39 @@
+package com.nextlabs.vfs;
+
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.junit.Test;
+
+import com.nextlabs.vfs.cache.FilesCacheConfigBuilder;
+import com.nextlabs.vfs.dto.CacheSettings;
+
+import static org.junit.Assert.*;
+
+public class ListingMetadataTest {
+
+	@Test
+	public void expiresAfterItsValidity() throws Exception {
+		ListingMetadata listing = new ListingMetadata(FileType.FILE, Long.valueOf(1), null, null, 50);
+		assertSame(listing, ListingMetadata.fresh(listing));
+		Thread.sleep(80);
+		assertNull(ListingMetadata.fresh(listing));
+	}
+
+	@Test
+	public void validityDefaultsAndFollowsCacheTimeToLive() {
+		FilesCacheConfigBuilder builder = FilesCacheConfigBuilder.getInstance();
+		assertEquals(ListingMetadata.DEFAULT_VALIDITY, builder.getListingValidity(new FileSystemOptions()));
+
+		FileSystemOptions longLived = new FileSystemOptions();
+		builder.setCacheSettings(longLived, new CacheSettings(100, 60000, false));
+		assertEquals(60000, builder.getListingValidity(longLived));
+
+		// A shorter time to live leaves the default, which listings are already trusted for
+		FileSystemOptions shortLived = new FileSystemOptions();
+		builder.setCacheSettings(shortLived, new CacheSettings(100, 1000, false));
+		assertEquals(ListingMetadata.DEFAULT_VALIDITY, builder.getListingValidity(shortLived));
+
+		builder.setListingValidity(shortLived, 30000);
+		assertEquals(30000, builder.getListingValidity(shortLived));
+	}
+}
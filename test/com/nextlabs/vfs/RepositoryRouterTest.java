@@ -0,0 +1,75 @@
+package com.nextlabs.vfs;
+
+import org.junit.Test;
+
+import com.nextlabs.vfs.constant.AuthType;
+import com.nextlabs.vfs.constant.RepositoryType;
+import com.nextlabs.vfs.dto.CacheSettings;
+import com.nextlabs.vfs.dto.RepositoryCredentials;
+
+import static org.junit.Assert.*;
+
+public class RepositoryRouterTest {
+	private final RepositoryCredentials credentials = new RepositoryCredentials("DOMAIN", "user", "secret", AuthType.HTTP_NTLM);
+
+	@Test
+	public void findsTheDeepestRepository() {
+		RepositoryRouter router = new RepositoryRouter();
+		RepositoryRouter.Route site = router.put("https://sp.example.com/sites/team", RepositoryType.SHAREPOINT, credentials);
+		RepositoryRouter.Route library = router.put("https://sp.example.com/sites/team/Shared Documents/", RepositoryType.SHAREPOINT, credentials);
+
+		assertSame(site, router.find("https://sp.example.com/sites/team/SitePages/Home.aspx"));
+		assertSame(library, router.find("https://sp.example.com/sites/team/Shared Documents/a/b.docx"));
+		assertSame(library, router.find("https://sp.example.com/sites/team/Shared Documents"));
+		assertNull(router.find("https://sp.example.com/sites/other/file.txt"));
+		assertNull(router.find(null));
+	}
+
+	@Test
+	public void matchesWholeSegmentsWhateverTheCaseAndSeparators() {
+		RepositoryRouter router = new RepositoryRouter();
+		RepositoryRouter.Route docs = router.put("\\\\server\\share\\docs", RepositoryType.SHARED_FOLDER, credentials);
+
+		assertSame(docs, router.find("file://SERVER/Share/Docs/report.pdf"));
+		assertSame(docs, router.find("//server/share/docs/report.pdf"));
+		assertNull(router.find("//server/share/docs2/report.pdf"));
+		assertNull(router.find("//server/share/doc"));
+		assertEquals("file://server/share/docs", docs.getPath());
+	}
+
+	@Test
+	public void keepsIdenticalRegistrations() {
+		RepositoryRouter router = new RepositoryRouter();
+		CacheSettings cache = new CacheSettings(10, 1000, false);
+		RepositoryRouter.Route route = router.put("//server/share", RepositoryType.SHARED_FOLDER, credentials, cache);
+
+		assertSame(route, router.put("//server/share/", RepositoryType.SHARED_FOLDER, credentials, cache));
+		// Without cache settings, those registered before are kept
+		assertSame(route, router.put("//server/share", RepositoryType.SHARED_FOLDER, credentials));
+
+		RepositoryRouter.Route replaced = router.put("//server/share", RepositoryType.AZURE_FILE_STORAGE, credentials);
+		assertNotSame(route, replaced);
+		assertSame(cache, replaced.getCacheSettings());
+		assertSame(replaced, router.get("//SERVER/share"));
+	}
+
+	@Test
+	public void replacesCredentialsOnly() {
+		RepositoryRouter router = new RepositoryRouter();
+		CacheSettings cache = new CacheSettings(10, 1000, false);
+		RepositoryRouter.Route outer = router.put("//server/share", RepositoryType.SHARED_FOLDER, credentials);
+		router.put("//server/share/inner", RepositoryType.SHARED_FOLDER, credentials, cache);
+
+		RepositoryCredentials changed = new RepositoryCredentials("DOMAIN", "user", "changed", AuthType.HTTP_NTLM);
+		RepositoryRouter.Route inner = router.setCredentials("//server/share/inner", changed);
+		assertSame(changed, inner.getCredentials());
+		assertSame(cache, inner.getCacheSettings());
+		assertEquals(RepositoryType.SHARED_FOLDER, inner.getType());
+		assertSame(inner, router.find("//server/share/inner/file"));
+		// Registrations along the path are left alone
+		assertSame(outer, router.find("//server/share/file"));
+
+		assertNull(router.setCredentials("//server/unknown", changed));
+		assertNull(router.get("//server/unknown"));
+	}
+}
@@ -0,0 +1,64 @@
+package com.nextlabs.vfs.azure.blob;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AzBlobPrefixCacheTest {
+
+	@Test
+	public void tellsPrefixesSharingTheirNameWithABlob() {
+		// In listing order
+		AzBlobPrefixCache.SameNames sameNames = new AzBlobPrefixCache.SameNames();
+		sameNames.blob("docs/a");
+		sameNames.blob("docs/a b");
+		sameNames.blob("docs/a.txt");
+		assertTrue(sameNames.prefix("docs/a/"));
+		sameNames.blob("docs/b");
+		assertFalse(sameNames.prefix("docs/c/"));
+		assertFalse(sameNames.prefix("docs/d/"));
+		sameNames.blob("docs/e.txt");
+		assertFalse(sameNames.prefix("docs/e/"));
+	}
+
+	@Test
+	public void answersFoldersWithoutABlobOfTheSameNameOnly() {
+		AzBlobPrefixCache cache = new AzBlobPrefixCache(60000, 100);
+		cache.add("container", "pure/", false);
+		cache.add("container", "shadowed/", true);
+		cache.add("container", "listed/");
+		assertEquals(AzBlobPrefixCache.Prefix.FOLDER, cache.get("container", "pure/"));
+		assertEquals(AzBlobPrefixCache.Prefix.FOLDER_OR_BLOB, cache.get("container", "shadowed/"));
+		assertEquals(AzBlobPrefixCache.Prefix.FOLDER_OR_BLOB, cache.get("container", "listed/"));
+		assertEquals(AzBlobPrefixCache.Prefix.UNKNOWN, cache.get("other", "pure/"));
+
+		// Its own listing does not tell about a blob of the same name, what the parent told is kept
+		cache.add("container", "pure/");
+		assertEquals(AzBlobPrefixCache.Prefix.FOLDER, cache.get("container", "pure/"));
+	}
+
+	@Test
+	public void forgetsThePrefixesAWrittenBlobChanges() {
+		AzBlobPrefixCache cache = new AzBlobPrefixCache(60000, 100);
+		cache.add("container", "a/", false);
+		cache.add("container", "a/b/", false);
+		cache.add("container", "a/b/c/", false);
+		cache.add("container", "z/", false);
+
+		cache.forget("container", "a/b/c");
+		assertEquals(AzBlobPrefixCache.Prefix.UNKNOWN, cache.get("container", "a/"));
+		assertEquals(AzBlobPrefixCache.Prefix.UNKNOWN, cache.get("container", "a/b/"));
+		// Now a blob of the same name may be there
+		assertEquals(AzBlobPrefixCache.Prefix.UNKNOWN, cache.get("container", "a/b/c/"));
+		assertEquals(AzBlobPrefixCache.Prefix.FOLDER, cache.get("container", "z/"));
+	}
+
+	@Test
+	public void keepsNothingWithoutATimeToLive() {
+		AzBlobPrefixCache cache = new AzBlobPrefixCache(0, 100);
+		cache.add("container", "a/", false);
+		cache.add("container", "b/");
+		assertEquals(AzBlobPrefixCache.Prefix.UNKNOWN, cache.get("container", "a/"));
+		assertEquals(AzBlobPrefixCache.Prefix.UNKNOWN, cache.get("container", "b/"));
+	}
+}
@@ -0,0 +1,64 @@
+package com.nextlabs.vfs.azure.blob;
+
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.provider.GenericFileName;
+import org.junit.Test;
+
+import com.microsoft.azure.storage.CloudStorageAccount;
+import com.microsoft.azure.storage.StorageCredentialsAccountAndKey;
+import com.microsoft.azure.storage.blob.CloudBlobClient;
+import com.nextlabs.vfs.azure.AzConstants;
+import com.nextlabs.vfs.azure.AzFileSystemConfigBuilder;
+
+import static org.junit.Assert.*;
+
+public class AzBlobSystemTest {
+
+	/*
+	 * A file system on an account never contacted
+	 */
+	private static AzBlobSystem system(FileSystemOptions opts) throws Exception {
+		CloudBlobClient client = new CloudStorageAccount(new StorageCredentialsAccountAndKey("account", "a2V5")).createCloudBlobClient();
+		return new AzBlobSystem(new GenericFileName(AzConstants.AZSBSCHEME, "account.blob.core.windows.net", -1, -1, null, null, "/", FileType.FOLDER) {
+		}, client, opts);
+	}
+
+	private static AzBlobSystem system(int singleBlobPutThreshold) throws Exception {
+		FileSystemOptions opts = new FileSystemOptions();
+		AzFileSystemConfigBuilder.getInstance().setSingleBlobPutThreshold(opts, singleBlobPutThreshold);
+		return system(opts);
+	}
+
+	@Test
+	public void singleBlobPutThresholdOutsideTheSdkRange() throws Exception {
+		assertEquals(0, system(0).getSingleBlobPutThreshold());
+		assertEquals(AzConstants.MIN_SINGLE_BLOB_PUT_THRESHOLD, system(0).getUploadOptions().getSingleBlobPutThresholdInBytes().intValue());
+
+		assertEquals(64 * 1024, system(64 * 1024).getSingleBlobPutThreshold());
+
+		AzBlobSystem large = system(Integer.MAX_VALUE);
+		assertEquals(AzConstants.MAX_SINGLE_BLOB_PUT_THRESHOLD, large.getSingleBlobPutThreshold());
+		assertEquals(AzConstants.MAX_SINGLE_BLOB_PUT_THRESHOLD, large.getUploadOptions().getSingleBlobPutThresholdInBytes().intValue());
+	}
+
+	@Test
+	public void singleBlobPutThresholdDefaultsTo32MiB() throws Exception {
+		assertEquals(32 * 1024 * 1024, system(new FileSystemOptions()).getSingleBlobPutThreshold());
+	}
+
+	@Test
+	public void uploadBlockSizeWithinTheSdkRange() throws Exception {
+		assertNull(system(new FileSystemOptions()).getUploadBlockSize());
+
+		FileSystemOptions opts = new FileSystemOptions();
+		AzFileSystemConfigBuilder.getInstance().setUploadBlockSize(opts, 8 * 1024 * 1024);
+		assertEquals(8 * 1024 * 1024, system(opts).getUploadBlockSize().intValue());
+
+		AzFileSystemConfigBuilder.getInstance().setUploadBlockSize(opts, 0);
+		assertEquals(AzConstants.MIN_UPLOAD_BLOCK_SIZE, system(opts).getUploadBlockSize().intValue());
+
+		AzFileSystemConfigBuilder.getInstance().setUploadBlockSize(opts, Integer.MAX_VALUE);
+		assertEquals(AzConstants.MAX_UPLOAD_BLOCK_SIZE, system(opts).getUploadBlockSize().intValue());
+	}
+}
@@ -0,0 +1,160 @@
+package com.nextlabs.vfs.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystem;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.impl.DecoratedFileObject;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.commons.vfs2.provider.ram.RamFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nextlabs.vfs.dto.CacheSettings;
+
+import static org.junit.Assert.*;
+
+public class RepositoryFilesCacheTest {
+	private DefaultFileSystemManager fsMgr;
+
+	/*
+	 * A FileObject that counts the refreshes the cache asks of it
+	 */
+	private static class CountingFileObject extends DecoratedFileObject {
+		final AtomicInteger refreshes = new AtomicInteger();
+
+		CountingFileObject(FileObject file) {
+			super(file);
+		}
+
+		@Override
+		public void refresh() throws FileSystemException {
+			refreshes.incrementAndGet();
+			super.refresh();
+		}
+	}
+
+	@Before
+	public void setUp() throws FileSystemException {
+		fsMgr = new DefaultFileSystemManager();
+		fsMgr.addProvider("ram", new RamFileProvider());
+		fsMgr.init();
+	}
+
+	@After
+	public void tearDown() {
+		fsMgr.close();
+	}
+
+	private CountingFileObject file(String path) throws FileSystemException {
+		return new CountingFileObject(fsMgr.resolveFile("ram:///" + path));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedBeyondMaxEntries() throws FileSystemException {
+		RepositoryFilesCache cache = new RepositoryFilesCache(new CacheSettings(3, 0, false));
+		FileObject[] files = new FileObject[4];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = file("f" + i);
+		}
+		FileSystem fs = files[0].getFileSystem();
+		cache.putFile(files[0]);
+		cache.putFile(files[1]);
+		cache.putFile(files[2]);
+		// Makes f1 the eldest
+		assertSame(files[0], cache.getFile(fs, files[0].getName()));
+		cache.putFile(files[3]);
+
+		assertNull(cache.getFile(fs, files[1].getName()));
+		assertSame(files[0], cache.getFile(fs, files[0].getName()));
+		assertSame(files[2], cache.getFile(fs, files[2].getName()));
+		assertSame(files[3], cache.getFile(fs, files[3].getName()));
+		RepositoryFilesCache.Statistics stats = cache.getStatistics(fs);
+		assertEquals(3, stats.getSize());
+		assertEquals(1, stats.getEvictions());
+		assertEquals(1, stats.getMisses());
+		assertEquals(4, stats.getHits());
+	}
+
+	@Test
+	public void refreshesEntriesOnceTheyOutliveTheirTimeToLive() throws Exception {
+		RepositoryFilesCache cache = new RepositoryFilesCache(new CacheSettings(10, 100, false));
+		CountingFileObject file = file("ttl");
+		FileSystem fs = file.getFileSystem();
+		cache.putFile(file);
+
+		assertSame(file, cache.getFile(fs, file.getName()));
+		assertEquals(0, file.refreshes.get());
+
+		Thread.sleep(150);
+		assertSame(file, cache.getFile(fs, file.getName()));
+		assertEquals(1, file.refreshes.get());
+		// Trusted again for a full time to live after the refresh
+		assertSame(file, cache.getFile(fs, file.getName()));
+		assertEquals(1, file.refreshes.get());
+		assertEquals(1, cache.getStatistics(fs).getExpirations());
+	}
+
+	@Test
+	public void keepsEntriesWithoutTimeToLive() throws Exception {
+		RepositoryFilesCache cache = new RepositoryFilesCache(new CacheSettings(10, 0, false));
+		CountingFileObject file = file("forever");
+		cache.putFile(file);
+		Thread.sleep(20);
+		assertSame(file, cache.getFile(file.getFileSystem(), file.getName()));
+		assertEquals(0, file.refreshes.get());
+	}
+
+	@Test
+	public void weakEntriesAreDroppedOnceCollected() throws Exception {
+		RepositoryFilesCache cache = new RepositoryFilesCache(new CacheSettings(10, 0, true));
+		CountingFileObject file = file("weak");
+		FileSystem fs = file.getFileSystem();
+		FileName name = file.getName();
+		cache.putFile(file);
+		assertSame(file, cache.getFile(fs, name));
+
+		file = null;
+		FileObject found = null;
+		for (int i = 0; i < 50; i++) {
+			System.gc();
+			found = cache.getFile(fs, name);
+			if (found == null) {
+				break;
+			}
+			found = null;
+			Thread.sleep(20);
+		}
+		assertNull("Weakly held entry was not collected", found);
+		assertEquals(1, cache.getStatistics(fs).getEvictions());
+		assertEquals(0, cache.getStatistics(fs).getSize());
+	}
+
+	@Test
+	public void strongEntriesSurviveCollection() throws Exception {
+		RepositoryFilesCache cache = new RepositoryFilesCache(new CacheSettings(10, 0, false));
+		FileSystem fs;
+		FileName name;
+		{
+			CountingFileObject file = file("strong");
+			fs = file.getFileSystem();
+			name = file.getName();
+			cache.putFile(file);
+		}
+		System.gc();
+		assertNotNull(cache.getFile(fs, name));
+	}
+
+	@Test
+	public void putFileIfAbsentKeepsTheCachedObject() throws FileSystemException {
+		RepositoryFilesCache cache = new RepositoryFilesCache(new CacheSettings(10, 0, false));
+		CountingFileObject first = file("same");
+		CountingFileObject second = file("same");
+		assertTrue(cache.putFileIfAbsent(first));
+		assertFalse(cache.putFileIfAbsent(second));
+		assertSame(first, cache.getFile(first.getFileSystem(), first.getName()));
+	}
+}
@@ -0,0 +1,215 @@
+package com.nextlabs.vfs.crawler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.provider.ram.RamFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestName;
+
+import com.nextlabs.vfs.ChildIterator;
+import com.nextlabs.vfs.RepositoryFileSystemManager;
+import com.nextlabs.vfs.constant.RepositoryType;
+import com.nextlabs.vfs.dto.CacheSettings;
+import com.nextlabs.vfs.dto.Repository;
+
+import static org.junit.Assert.*;
+
+public class IncrementalCrawlerTest {
+	@Rule
+	public TemporaryFolder manifests = new TemporaryFolder();
+	@Rule
+	public TestName testName = new TestName();
+
+	private final Set<String> failingFolders = new HashSet<String>();
+	private RepositoryFileSystemManager fsMgr;
+	private RepositoryCrawler crawler;
+	private IncrementalCrawler incremental;
+	private String rootUri;
+
+	/*
+	 * Fails to list the folders named in failingFolders. Ram files cannot be written through the decorators of the
+	 * ON_CALL strategy, hence the cache settings.
+	 */
+	private class FailingFileSystemManager extends RepositoryFileSystemManager {
+		FailingFileSystemManager() throws FileSystemException {
+			super(new CacheSettings(100, 0, false));
+		}
+
+		@Override
+		public ChildIterator iterateChildren(FileObject folder) throws FileSystemException {
+			if (failingFolders.contains(folder.getName().getBaseName())) {
+				throw new FileSystemException("vfs.provider/list-children.error", folder);
+			}
+			return super.iterateChildren(folder);
+		}
+	}
+
+	/*
+	 * Records each difference as "<change> <path under the root>"
+	 */
+	private class RecordingListener implements IncrementalCrawler.ChangeListener {
+		private final Set<String> changes = new TreeSet<String>();
+
+		private synchronized void record(String change, String uri) {
+			changes.add(change + " " + uri.substring(rootUri.length() + 1));
+		}
+
+		@Override
+		public void onAdded(FileObject file) {
+			record("added", file.getName().getURI());
+		}
+
+		@Override
+		public void onChanged(FileObject file) {
+			record("changed", file.getName().getURI());
+		}
+
+		@Override
+		public void onDeleted(String uri) {
+			record("deleted", uri);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		rootUri = "ram:///incremental/" + testName.getMethodName();
+		RepositoryFileSystemManager.addRepository(new Repository(rootUri, RepositoryType.LOCAL, null));
+		fsMgr = new FailingFileSystemManager();
+		fsMgr.addProvider(RepositoryType.LOCAL.getName(), new RamFileProvider());
+		fsMgr.init();
+		crawler = new RepositoryCrawler(fsMgr, 2);
+		incremental = new IncrementalCrawler(crawler, manifests.getRoot());
+
+		write("a.txt", "a");
+		write("b.txt", "b");
+		write("docs/c.txt", "c");
+		write("docs/d.txt", "d");
+		write("docs/deep/e.txt", "e");
+	}
+
+	@After
+	public void tearDown() {
+		crawler.close();
+		fsMgr.close();
+	}
+
+	private FileObject file(String path) throws FileSystemException {
+		return fsMgr.resolveFile(rootUri + "/" + path);
+	}
+
+	private void write(String path, String content) throws IOException {
+		FileObject file = file(path);
+		try (OutputStream out = file.getContent().getOutputStream()) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private Set<String> crawl(long added, long changed, long deleted, long unchanged) throws IOException {
+		RecordingListener listener = new RecordingListener();
+		IncrementalCrawler.Summary summary = incremental.crawl(rootUri, listener);
+		assertEquals(added, summary.getAdded());
+		assertEquals(changed, summary.getChanged());
+		assertEquals(deleted, summary.getDeleted());
+		assertEquals(unchanged, summary.getUnchanged());
+		return listener.changes;
+	}
+
+	private static Set<String> changes(String... changes) {
+		return new TreeSet<String>(Arrays.asList(changes));
+	}
+
+	private File manifest() {
+		File[] files = manifests.getRoot().listFiles();
+		assertEquals(1, files.length);
+		return files[0];
+	}
+
+	@Test
+	public void reportsEverythingOnTheFirstCrawl() throws IOException {
+		assertEquals(changes("added a.txt", "added b.txt", "added docs/c.txt", "added docs/d.txt", "added docs/deep/e.txt"), crawl(5, 0, 0, 0));
+		assertTrue(manifest().getName().endsWith(".manifest"));
+	}
+
+	@Test
+	public void reportsOnlyWhatChanged() throws IOException {
+		crawl(5, 0, 0, 0);
+		// Read back from the manifest alone
+		incremental = new IncrementalCrawler(crawler, manifests.getRoot());
+		assertEquals(changes(), crawl(0, 0, 0, 5));
+
+		write("a.txt", "modified");
+		file("docs/d.txt").delete();
+		write("docs/deep/f.txt", "f");
+		assertEquals(changes("added docs/deep/f.txt", "changed a.txt", "deleted docs/d.txt"), crawl(1, 1, 1, 3));
+		assertEquals(changes(), crawl(0, 0, 0, 5));
+	}
+
+	@Test
+	public void keepsTheEntriesOfFoldersThatFailToList() throws IOException {
+		crawl(5, 0, 0, 0);
+
+		failingFolders.add("docs");
+		write("b.txt", "modified");
+		assertEquals(changes("changed b.txt"), crawl(0, 1, 0, 1));
+
+		// Known again once the folder lists, deletions included
+		failingFolders.clear();
+		file("docs/deep/e.txt").delete();
+		assertEquals(changes("deleted docs/deep/e.txt"), crawl(0, 0, 1, 4));
+	}
+
+	@Test
+	public void keepsEveryEntryWhenTheRootFailsToList() throws IOException {
+		crawl(5, 0, 0, 0);
+
+		failingFolders.add(testName.getMethodName());
+		assertEquals(changes(), crawl(0, 0, 0, 0));
+
+		failingFolders.clear();
+		assertEquals(changes(), crawl(0, 0, 0, 5));
+	}
+
+	@Test
+	public void reportsEverythingAfterATruncatedManifest() throws IOException {
+		crawl(5, 0, 0, 0);
+		File manifest = manifest();
+		try (RandomAccessFile file = new RandomAccessFile(manifest, "rw")) {
+			file.setLength(file.length() / 2);
+		}
+		assertEquals(5, crawl(5, 0, 0, 0).size());
+		// Rewritten whole
+		assertEquals(changes(), crawl(0, 0, 0, 5));
+	}
+
+	@Test
+	public void reportsEverythingAfterAManifestInAnotherFormat() throws IOException {
+		crawl(5, 0, 0, 0);
+		File manifest = manifest();
+		try (OutputStream out = new GZIPOutputStream(new FileOutputStream(manifest))) {
+			out.write("not a manifest".getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals(5, crawl(5, 0, 0, 0).size());
+
+		try (OutputStream out = new FileOutputStream(manifest)) {
+			out.write(new byte[] { 1, 2, 3 });
+		}
+		// Not even gzip
+		assertTrue(crawl(5, 0, 0, 0).contains("added docs/deep/e.txt"));
+	}
+}
@@ -0,0 +1,96 @@
+package com.nextlabs.vfs.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RepositoryCrawlerTest {
+
+	/*
+	 * Forks as many tasks as a wide folder would, each making one slow request
+	 */
+	private static class RequestTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Semaphore permits;
+		private final int requests;
+		private final AtomicInteger inFlight;
+		private final AtomicInteger maxInFlight;
+
+		RequestTask(Semaphore permits, int requests, AtomicInteger inFlight, AtomicInteger maxInFlight) {
+			this.permits = permits;
+			this.requests = requests;
+			this.inFlight = inFlight;
+			this.maxInFlight = maxInFlight;
+		}
+
+		@Override
+		protected void compute() {
+			if (requests > 1) {
+				List<RequestTask> tasks = new ArrayList<RequestTask>();
+				for (int i = 0; i < requests; i++) {
+					RequestTask task = new RequestTask(permits, 1, inFlight, maxInFlight);
+					task.fork();
+					tasks.add(task);
+				}
+				for (RequestTask task : tasks) {
+					task.join();
+				}
+				return;
+			}
+			try {
+				RepositoryCrawler.block(permits, () -> {
+					maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+					Thread.sleep(20);
+					inFlight.decrementAndGet();
+					return null;
+				});
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	@Test
+	public void threadsStayBoundedByPermits() throws Exception {
+		int parallelism = 2;
+		int permitCount = 3;
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			Semaphore permits = new Semaphore(permitCount);
+			AtomicInteger inFlight = new AtomicInteger();
+			AtomicInteger maxInFlight = new AtomicInteger();
+			pool.invoke(new RequestTask(permits, 200, inFlight, maxInFlight));
+
+			assertTrue("Requests in flight exceeded the permits: " + maxInFlight.get(), maxInFlight.get() <= permitCount);
+			// One compensating thread at most per request holding a permit
+			assertTrue("Pool grew to " + pool.getPoolSize() + " threads", pool.getPoolSize() <= parallelism + permitCount);
+			assertEquals(permitCount, permits.availablePermits());
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void failureIsRethrownAndPermitReleased() {
+		Semaphore permits = new Semaphore(1);
+		try {
+			RepositoryCrawler.block(permits, () -> {
+				throw new IllegalStateException("listing failed");
+			});
+			fail("Expected the request's exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof IllegalStateException);
+		}
+		assertEquals(1, permits.availablePermits());
+	}
+}
@@ -0,0 +1,126 @@
+package com.nextlabs.vfs.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ParallelRangeInputStreamTest {
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private static byte[] content(int length) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) (i * 31 + i / 256);
+		}
+		return content;
+	}
+
+	/*
+	 * Reads from the content, failing every read at or past failAt
+	 */
+	private static RangeReader.Opener opener(final byte[] content, final long failAt, final AtomicInteger open) {
+		return () -> {
+			open.incrementAndGet();
+			return new RangeReader() {
+				@Override
+				public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+					if (position >= failAt) {
+						throw new IOException("Failed at " + position);
+					}
+					// Short reads, as a network would give
+					int n = (int) Math.min(Math.min(length, 7), content.length - position);
+					System.arraycopy(content, (int) position, buffer, offset, n);
+					return n;
+				}
+
+				@Override
+				public void close() {
+					open.decrementAndGet();
+				}
+			};
+		};
+	}
+
+	@Test
+	public void readsInOrder() throws Exception {
+		byte[] content = content(10000);
+		AtomicInteger open = new AtomicInteger();
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		try (ParallelRangeInputStream in = new ParallelRangeInputStream(opener(content, Long.MAX_VALUE, open), content.length, 64, 4, executor)) {
+			byte[] buffer = new byte[100];
+			read.write(in.read());
+			assertEquals(10, in.skip(10));
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				read.write(buffer, 0, n);
+			}
+		}
+		byte[] expected = new byte[content.length - 10];
+		expected[0] = content[0];
+		System.arraycopy(content, 11, expected, 1, content.length - 11);
+		assertArrayEquals(expected, read.toByteArray());
+	}
+
+	@Test
+	public void failedChunkKeepsFailingTheStream() throws Exception {
+		byte[] content = content(1000);
+		AtomicInteger open = new AtomicInteger();
+		ParallelRangeInputStream in = new ParallelRangeInputStream(opener(content, 300, open), content.length, 100, 2, executor);
+		byte[] buffer = new byte[100];
+		int total = 0;
+		try {
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				assertArrayEquals(Arrays.copyOfRange(content, total, total + n), Arrays.copyOf(buffer, n));
+				total += n;
+			}
+			fail("Read past the failed chunk");
+		} catch (IOException expected) {
+			assertEquals(300, total);
+		}
+		// Neither the previous chunk's bytes nor another exception type
+		for (int i = 0; i < 3; i++) {
+			try {
+				in.read();
+				fail("Read after the failure");
+			} catch (IOException expected) {
+			}
+			try {
+				in.read(buffer, 0, buffer.length);
+				fail("Read after the failure");
+			} catch (IOException expected) {
+			}
+		}
+		assertEquals(0, in.available());
+		in.close();
+	}
+
+	@Test
+	public void closeReleasesTheReaders() throws Exception {
+		byte[] content = content(100000);
+		AtomicInteger open = new AtomicInteger();
+		ParallelRangeInputStream in = new ParallelRangeInputStream(opener(content, Long.MAX_VALUE, open), content.length, 100, 3, executor);
+		assertEquals(content[0] & 0xff, in.read());
+		in.close();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(0, open.get());
+		try {
+			in.read();
+			fail("Read after close");
+		} catch (IOException expected) {
+		}
+	}
+}
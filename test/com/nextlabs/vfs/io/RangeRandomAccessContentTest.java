@@ -0,0 +1,127 @@
+package com.nextlabs.vfs.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RangeRandomAccessContentTest {
+
+	/*
+	 * Serves a byte array, recording the offset and length of every request
+	 */
+	private static class RecordingReader implements RangeReader {
+		final byte[] content;
+		final List<long[]> requests = new ArrayList<long[]>();
+		boolean closed;
+
+		RecordingReader(int length) {
+			content = new byte[length];
+			for (int i = 0; i < length; i++) {
+				content[i] = (byte) (i * 7 + i / 251);
+			}
+		}
+
+		@Override
+		public int read(long position, byte[] buffer, int offset, int length) {
+			requests.add(new long[] { position, length });
+			if (position >= content.length) {
+				return -1;
+			}
+			int n = (int) Math.min(length, content.length - position);
+			System.arraycopy(content, (int) position, buffer, offset, n);
+			return n;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	@Test
+	public void headerAndTrailerCostOneBlockEach() throws IOException {
+		RecordingReader reader = new RecordingReader(100000);
+		RangeRandomAccessContent content = new RangeRandomAccessContent(reader, reader.content.length, 1000, 4, 8);
+		byte[] header = new byte[4];
+		content.readFully(header);
+		content.seek(reader.content.length - 4);
+		byte[] trailer = new byte[4];
+		content.readFully(trailer);
+
+		assertArrayEquals(Arrays.copyOf(reader.content, 4), header);
+		assertArrayEquals(Arrays.copyOfRange(reader.content, reader.content.length - 4, reader.content.length), trailer);
+		assertEquals(2, reader.requests.size());
+		assertArrayEquals(new long[] { 0, 1000 }, reader.requests.get(0));
+		assertArrayEquals(new long[] { 99000, 1000 }, reader.requests.get(1));
+
+		// Held, so read again without a request
+		content.seek(2);
+		assertEquals(reader.content[2], content.readByte());
+		assertEquals(2, reader.requests.size());
+	}
+
+	@Test
+	public void sequentialReadsFetchAhead() throws IOException {
+		RecordingReader reader = new RecordingReader(64 * 100 + 10);
+		RangeRandomAccessContent content = new RangeRandomAccessContent(reader, reader.content.length, 100, 16, 8);
+		byte[] read = new byte[reader.content.length];
+		InputStream in = content.getInputStream();
+		int total = 0;
+		for (int n = in.read(read, 0, 33); n >= 0; n = in.read(read, total, Math.min(33, read.length - total))) {
+			total += n;
+			if (total == read.length) {
+				break;
+			}
+		}
+		assertEquals(-1, in.read());
+		assertArrayEquals(reader.content, read);
+
+		// 1, 2, 4, then 8 blocks at a time
+		assertEquals(100, reader.requests.get(0)[1]);
+		assertEquals(200, reader.requests.get(1)[1]);
+		assertEquals(400, reader.requests.get(2)[1]);
+		assertEquals(800, reader.requests.get(3)[1]);
+		// The other 58 of the 65 blocks in 8 requests, the last of 2 blocks
+		assertEquals(3 + 8, reader.requests.size());
+		assertArrayEquals(new long[] { 6300, 110 }, reader.requests.get(10));
+	}
+
+	@Test
+	public void randomReadsAndEndOfFile() throws IOException {
+		RecordingReader reader = new RecordingReader(5000);
+		RangeRandomAccessContent content = new RangeRandomAccessContent(reader, reader.content.length, 128, 2, 4);
+		long[] positions = { 4000, 10, 2999, 127, 128, 4990, 0 };
+		for (long position : positions) {
+			content.seek(position);
+			assertEquals(position, content.getFilePointer());
+			assertEquals(reader.content[(int) position], content.readByte());
+		}
+
+		content.seek(4998);
+		assertEquals(((reader.content[4998] & 0xff) << 8) | (reader.content[4999] & 0xff), content.readUnsignedShort());
+		assertEquals(-1, content.getInputStream().read());
+		try {
+			content.readInt();
+			fail("Read past the end");
+		} catch (EOFException expected) {
+		}
+		assertEquals(0, content.skipBytes(10));
+		assertEquals(5000, content.length());
+
+		content.close();
+		assertTrue(reader.closed);
+		try {
+			content.seek(0);
+			content.readByte();
+			fail("Read after close");
+		} catch (IOException expected) {
+		}
+	}
+}
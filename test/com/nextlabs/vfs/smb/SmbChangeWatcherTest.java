@@ -0,0 +1,122 @@
+package com.nextlabs.vfs.smb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.commons.vfs2.provider.ram.RamFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jcifs.FileNotifyInformation;
+
+import static org.junit.Assert.*;
+
+public class SmbChangeWatcherTest {
+	private DefaultFileSystemManager fsMgr;
+	private FileObject folder;
+	private final List<String> published = new ArrayList<String>();
+
+	/*
+	 * Records what it is told, failing for the paths listed
+	 */
+	private class RecordingListener implements SmbChangeWatcher.Listener {
+		private final List<String> failing;
+
+		RecordingListener(String... failing) {
+			this.failing = Arrays.asList(failing);
+		}
+
+		private void record(String change, FileObject file) {
+			String path = file.getName().getBaseName();
+			if (failing.contains(path)) {
+				throw new IllegalStateException("Listener failed on " + path);
+			}
+			published.add(change + " " + path);
+		}
+
+		@Override
+		public void onAdded(FileObject file) {
+			record("added", file);
+		}
+
+		@Override
+		public void onModified(FileObject file) {
+			record("modified", file);
+		}
+
+		@Override
+		public void onDeleted(String uri) {
+			published.add("deleted " + uri.substring(uri.lastIndexOf('/') + 1));
+		}
+
+		@Override
+		public void onRenamed(String oldUri, FileObject file) {
+			record("renamed " + oldUri.substring(oldUri.lastIndexOf('/') + 1) + " to", file);
+		}
+
+		@Override
+		public void onOverflow(FileObject overflowed) {
+			published.add("overflow");
+		}
+	}
+
+	private static FileNotifyInformation event(final int action, final String name) {
+		return new FileNotifyInformation() {
+			@Override
+			public int getAction() {
+				return action;
+			}
+
+			@Override
+			public String getFileName() {
+				return name;
+			}
+		};
+	}
+
+	@Before
+	public void setUp() throws FileSystemException {
+		fsMgr = new DefaultFileSystemManager();
+		fsMgr.addProvider("ram", new RamFileProvider());
+		fsMgr.init();
+		folder = fsMgr.resolveFile("ram:///watched");
+		folder.createFolder();
+	}
+
+	@After
+	public void tearDown() {
+		fsMgr.close();
+	}
+
+	private SmbChangeWatcher watcher(SmbChangeWatcher.Listener listener) {
+		SmbChangeWatcher watcher = new SmbChangeWatcher(folder, null, listener, 0);
+		watcher.record(Arrays.asList(event(FileNotifyInformation.FILE_ACTION_ADDED, "a"), event(FileNotifyInformation.FILE_ACTION_MODIFIED, "a"),
+				event(FileNotifyInformation.FILE_ACTION_MODIFIED, "b"), event(FileNotifyInformation.FILE_ACTION_ADDED, "c"),
+				event(FileNotifyInformation.FILE_ACTION_REMOVED, "c"), event(FileNotifyInformation.FILE_ACTION_RENAMED_OLD_NAME, "d"),
+				event(FileNotifyInformation.FILE_ACTION_RENAMED_NEW_NAME, "e")));
+		watcher.record(Arrays.asList(event(FileNotifyInformation.FILE_ACTION_MODIFIED, "b"), event(FileNotifyInformation.FILE_ACTION_REMOVED, "f")));
+		return watcher;
+	}
+
+	@Test
+	public void coalescesABatch() {
+		watcher(new RecordingListener()).publishPending();
+		assertEquals(Arrays.asList("added a", "modified b", "renamed d to e", "deleted f"), published);
+	}
+
+	@Test
+	public void failingChangeFallsBackToOverflow() {
+		SmbChangeWatcher watcher = watcher(new RecordingListener("b"));
+		watcher.publishPending();
+		assertEquals(Arrays.asList("added a", "renamed d to e", "deleted f", "overflow"), published);
+
+		published.clear();
+		watcher.publishPending();
+		assertEquals(Arrays.asList(), published);
+	}
+}
@@ -0,0 +1,73 @@
+package com.nextlabs.vfs.smb;
+
+import java.util.Properties;
+
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.junit.Test;
+
+import jcifs.CIFSContext;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.smb.NtlmPasswordAuthenticator;
+
+import static org.junit.Assert.*;
+
+public class SmbContextPoolTest {
+
+	private static CIFSContext base() throws Exception {
+		return new BaseContext(new PropertyConfiguration(new Properties()));
+	}
+
+	private static SmbContextPool.Tuning tuning(int connections) {
+		FileSystemOptions opts = new FileSystemOptions();
+		SmbFileSystemConfigBuilder.getInstance().setConnectionsPerServer(opts, connections);
+		return new SmbContextPool.Tuning(opts);
+	}
+
+	@Test
+	public void sharesContextsUntilTheLastUserReleasesThem() throws Exception {
+		CIFSContext base = base();
+		SmbContextPool.Contexts first = SmbContextPool.get("host", base, tuning(1), true, "D", "user", "secret");
+		SmbContextPool.Contexts second = SmbContextPool.get("HOST", base, tuning(1), true, "D", "user", "secret");
+		assertSame(first, second);
+
+		SmbContextPool.release(first);
+		assertSame(first, SmbContextPool.get("host", base, tuning(1), true, "D", "user", "secret"));
+		SmbContextPool.release(first);
+		SmbContextPool.release(second);
+		assertNotSame(first, SmbContextPool.get("host", base, tuning(1), true, "D", "user", "secret"));
+	}
+
+	@Test
+	public void keysOnTheWholeCredentials() throws Exception {
+		CIFSContext base = base();
+		SmbContextPool.Contexts contexts = SmbContextPool.get("host", base, tuning(1), true, "D", "user", "secret");
+		SmbContextPool.Contexts[] others = { SmbContextPool.get("host", base, tuning(1), true, "D", "user", "other"),
+				SmbContextPool.get("host", base, tuning(1), true, "Du", "ser", "secret"), SmbContextPool.get("host", base, tuning(1), true, null, "user", "secret") };
+		for (SmbContextPool.Contexts other : others) {
+			assertNotSame(contexts, other);
+			SmbContextPool.release(other);
+		}
+		SmbContextPool.release(contexts);
+	}
+
+	@Test
+	public void unauthenticatedContextsKeepTheBaseCredentials() throws Exception {
+		NtlmPasswordAuthenticator credentials = new NtlmPasswordAuthenticator("D", "service", "secret");
+		CIFSContext base = base().withCredentials(credentials);
+		SmbContextPool.Contexts contexts = SmbContextPool.get("host", base, tuning(3), false, null, null, null);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(credentials, contexts.next().getCredentials());
+		}
+		SmbContextPool.release(contexts);
+	}
+
+	@Test
+	public void authenticatedContextsUseTheGivenCredentials() throws Exception {
+		SmbContextPool.Contexts contexts = SmbContextPool.get("host", base(), tuning(2), true, "D", "user", "secret");
+		for (int i = 0; i < 2; i++) {
+			assertEquals(new NtlmPasswordAuthenticator("D", "user", "secret"), contexts.next().getCredentials());
+		}
+		SmbContextPool.release(contexts);
+	}
+}
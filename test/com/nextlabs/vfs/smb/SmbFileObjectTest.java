@@ -0,0 +1,87 @@
+package com.nextlabs.vfs.smb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.vfs2.FileChangeEvent;
+import org.apache.commons.vfs2.FileListener;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.commons.vfs2.util.FileObjectUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nextlabs.vfs.ListingMetadata;
+
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+
+import static org.junit.Assert.*;
+
+public class SmbFileObjectTest {
+	private DefaultFileSystemManager fsMgr;
+	private final List<String> events = new ArrayList<String>();
+
+	@Before
+	public void setUp() throws Exception {
+		fsMgr = new DefaultFileSystemManager();
+		fsMgr.addProvider("smb", new SmbFileProvider());
+		fsMgr.init();
+	}
+
+	@After
+	public void tearDown() {
+		fsMgr.close();
+	}
+
+	/*
+	 * Resolved only, nothing is asked of the server
+	 */
+	private SmbFileObject file(String path) throws Exception {
+		FileSystemOptions opts = new FileSystemOptions();
+		SmbFileSystemConfigBuilder.getInstance().setCIFSContext(opts, new BaseContext(new PropertyConfiguration(new Properties())));
+		FileObject file = fsMgr.resolveFile("smb://host/share/" + path, opts);
+		file.getFileSystem().addListener(file, new FileListener() {
+			@Override
+			public void fileCreated(FileChangeEvent event) {
+				events.add("created " + event.getFile().getName().getBaseName());
+			}
+
+			@Override
+			public void fileDeleted(FileChangeEvent event) {
+				events.add("deleted " + event.getFile().getName().getBaseName());
+			}
+
+			@Override
+			public void fileChanged(FileChangeEvent event) {
+				events.add("changed " + event.getFile().getName().getBaseName());
+			}
+		});
+		return (SmbFileObject) FileObjectUtils.getAbstractFileObject(file);
+	}
+
+	@Test
+	public void copyingOverAFileDropsItsAttributes() throws Exception {
+		SmbFileObject target = file("existing.txt");
+		target.seed(new ListingMetadata(FileType.FILE, 5L, 1000L, null));
+		assertTrue(target.hasCachedAttributes());
+
+		target.copied(true);
+		assertFalse(target.hasCachedAttributes());
+		assertEquals("[changed existing.txt]", events.toString());
+	}
+
+	@Test
+	public void copyingToANewFileDropsItsAttributes() throws Exception {
+		SmbFileObject target = file("new.txt");
+		target.seed(new ListingMetadata(FileType.IMAGINARY, null, null, null));
+
+		target.copied(false);
+		assertFalse(target.hasCachedAttributes());
+		assertEquals("[created new.txt]", events.toString());
+	}
+}
@@ -0,0 +1,124 @@
+package com.nextlabs.vfs.smb;
+
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.junit.Test;
+
+import jcifs.smb.NtStatus;
+import jcifs.smb.SmbException;
+
+import static org.junit.Assert.*;
+
+public class SmbServerBreakerTest {
+	private static final AtomicInteger servers = new AtomicInteger();
+
+	/*
+	 * A policy on a server of its own, as breakers are shared by server
+	 */
+	private static SmbRetryPolicy policy(int maxAttempts, int threshold, long cooldown) {
+		FileSystemOptions opts = new FileSystemOptions();
+		SmbFileSystemConfigBuilder builder = SmbFileSystemConfigBuilder.getInstance();
+		builder.setRetryMaxAttempts(opts, maxAttempts);
+		builder.setRetryInitialDelay(opts, 1);
+		builder.setRetryMaxDelay(opts, 2);
+		builder.setBreakerFailureThreshold(opts, threshold);
+		builder.setBreakerCooldown(opts, cooldown);
+		return new SmbRetryPolicy("server" + servers.incrementAndGet(), opts);
+	}
+
+	private static void unreachable(SmbRetryPolicy policy) {
+		try {
+			policy.call(null, () -> {
+				throw new SocketException("Connection reset");
+			});
+			fail("Reached the server");
+		} catch (Exception expected) {
+		}
+	}
+
+	@Test
+	public void retriesOnlyUnreachableRequests() throws Exception {
+		SmbRetryPolicy policy = policy(3, 100, 1000);
+		AtomicInteger attempts = new AtomicInteger();
+		assertEquals("done", policy.call(null, () -> {
+			if (attempts.incrementAndGet() < 3) {
+				throw new SocketException("Connection reset");
+			}
+			return "done";
+		}));
+		assertEquals(3, attempts.get());
+
+		attempts.set(0);
+		try {
+			policy.call(null, () -> {
+				attempts.incrementAndGet();
+				throw new SmbException(NtStatus.NT_STATUS_ACCESS_DENIED, false);
+			});
+			fail("Access granted");
+		} catch (SmbException expected) {
+		}
+		assertEquals(1, attempts.get());
+		assertEquals(0, policy.getBreaker().getConsecutiveFailures());
+	}
+
+	@Test
+	public void opensAfterTheThresholdAndClosesOnceProbed() throws Exception {
+		SmbRetryPolicy policy = policy(1, 2, 50);
+		unreachable(policy);
+		assertEquals(SmbServerBreaker.State.CLOSED, policy.getBreaker().getState());
+		unreachable(policy);
+		assertEquals(SmbServerBreaker.State.OPEN, policy.getBreaker().getState());
+		try {
+			policy.call(null, () -> "not sent");
+			fail("Request let through an open breaker");
+		} catch (FileSystemException expected) {
+		}
+
+		Thread.sleep(80);
+		unreachable(policy);
+		assertEquals("Failed probe", SmbServerBreaker.State.OPEN, policy.getBreaker().getState());
+
+		Thread.sleep(80);
+		assertEquals("reached", policy.call(null, () -> "reached"));
+		assertEquals(SmbServerBreaker.State.CLOSED, policy.getBreaker().getState());
+		assertEquals(SmbServerBreaker.State.CLOSED, SmbServerBreaker.getState(policy.getBreaker().getServer()));
+	}
+
+	@Test
+	public void probeThatHearsNothingFromTheServerIsAbandoned() throws Exception {
+		SmbRetryPolicy policy = policy(1, 1, 20);
+		unreachable(policy);
+		Thread.sleep(40);
+		try {
+			policy.call(null, () -> {
+				throw new InterruptedIOException();
+			});
+			fail("Not interrupted");
+		} catch (InterruptedIOException expected) {
+		}
+		assertEquals(SmbServerBreaker.State.OPEN, policy.getBreaker().getState());
+
+		try {
+			policy.call(null, () -> {
+				throw new IllegalStateException("Bug on this side");
+			});
+			fail("No failure");
+		} catch (IllegalStateException expected) {
+		}
+		assertEquals(SmbServerBreaker.State.OPEN, policy.getBreaker().getState());
+
+		// Neither counted as a failure, so the next request probes at once
+		try {
+			policy.call(null, () -> {
+				throw new SmbException(NtStatus.NT_STATUS_ACCESS_DENIED, false);
+			});
+			fail("Access granted");
+		} catch (SmbException expected) {
+		}
+		assertEquals(SmbServerBreaker.State.CLOSED, policy.getBreaker().getState());
+	}
+}
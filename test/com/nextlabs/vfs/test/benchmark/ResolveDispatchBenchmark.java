@@ -0,0 +1,105 @@
+package com.nextlabs.vfs.test.benchmark;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.commons.vfs2.provider.FileProvider;
+import org.apache.commons.vfs2.provider.ram.RamFileProvider;
+
+import com.nextlabs.vfs.RepositoryFileSystemManager;
+import com.nextlabs.vfs.constant.RepositoryType;
+import com.nextlabs.vfs.dto.Repository;
+
+/*
+ * Measures the per-resolve overhead of RepositoryFileSystemManager against an in-memory (ram:) provider,
+ * so that network latency does not hide the cost of routing and provider dispatch.
+ *
+ * "legacy" replays what resolveFile used to do on every call: a linear startsWith scan for the credentials, a new
+ * FileSystemOptions, a reflective read of DefaultFileSystemManager.providers and a second scan for the repository
+ * type. "current" is resolveFile(String) as it is now: one trie lookup, the cached options and an EnumMap dispatch.
+ * Both end in the same provider.findFile call.
+ *
+ * Usage: ResolveDispatchBenchmark [repositories] [iterations]
+ */
+public class ResolveDispatchBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 10;
+
+	public static void main(String[] args) throws Exception {
+		int repositories = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+		RepositoryFileSystemManager fsMgr = new RepositoryFileSystemManager();
+		fsMgr.addProvider(RepositoryType.LOCAL.getName(), new RamFileProvider());
+		fsMgr.init();
+
+		Map<String, RepositoryType> repoTypeMapping = new HashMap<String, RepositoryType>();
+		for (int i = 0; i < repositories; i++) {
+			String path = "ram:///repository" + i;
+			RepositoryFileSystemManager.addRepository(new Repository(path, RepositoryType.LOCAL, null));
+			repoTypeMapping.put(RepositoryFileSystemManager.urlEncode(path).toLowerCase(), RepositoryType.LOCAL);
+		}
+
+		String[] uris = new String[64];
+		for (int i = 0; i < uris.length; i++) {
+			uris[i] = "ram:///repository" + (i * 997 % repositories) + "/folder" + i + "/file" + i + ".docx";
+		}
+
+		System.out.println("Resolving against " + repositories + " registered repositories, " + iterations + " resolves per round");
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			legacy(fsMgr, repoTypeMapping, uris, iterations);
+			current(fsMgr, uris, iterations);
+		}
+		long legacy = 0;
+		long current = 0;
+		for (int round = 0; round < MEASURED_ROUNDS; round++) {
+			legacy += legacy(fsMgr, repoTypeMapping, uris, iterations);
+			current += current(fsMgr, uris, iterations);
+		}
+		System.out.printf("legacy : %10.1f ns/resolve%n", (double) legacy / MEASURED_ROUNDS / iterations);
+		System.out.printf("current: %10.1f ns/resolve%n", (double) current / MEASURED_ROUNDS / iterations);
+		fsMgr.close();
+	}
+
+	private static long current(RepositoryFileSystemManager fsMgr, String[] uris, int iterations) throws Exception {
+		int sink = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			FileObject file = fsMgr.resolveFile(uris[i & (uris.length - 1)]);
+			sink += file.hashCode();
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sink == 42) System.out.println();
+		return elapsed;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static long legacy(RepositoryFileSystemManager fsMgr, Map<String, RepositoryType> repoTypeMapping, String[] uris, int iterations) throws Exception {
+		int sink = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			String uri = uris[i & (uris.length - 1)];
+			sink += legacyRepoPath(repoTypeMapping, uri).hashCode();
+			FileSystemOptions options = new FileSystemOptions();
+			Field field = DefaultFileSystemManager.class.getDeclaredField("providers");
+			field.setAccessible(true);
+			Map<String, FileProvider> providers = (Map<String, FileProvider>) field.get(fsMgr);
+			FileProvider provider = providers.get(repoTypeMapping.get(legacyRepoPath(repoTypeMapping, uri)).getName());
+			FileObject file = provider.findFile(null, uri, options);
+			sink += file.hashCode();
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sink == 42) System.out.println();
+		return elapsed;
+	}
+
+	private static String legacyRepoPath(Map<String, RepositoryType> repoTypeMapping, String fileUri) {
+		String uriEncoded = RepositoryFileSystemManager.urlEncode(fileUri).toLowerCase();
+		return repoTypeMapping.keySet().stream().filter(path -> uriEncoded.startsWith(path)).findAny().orElse(null);
+	}
+}
@@ -12,22 +12,23 @@ import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.vfs2.AllFileSelector;
-import org.apache.commons.vfs2.FileContent;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileType;
 import org.apache.commons.vfs2.NameScope;
 
 import com.nextlabs.common.io.IOUtils;
+import com.nextlabs.vfs.AsyncFileSystemManager;
 import com.nextlabs.vfs.RepositoryFileSystemManager;
 import com.nextlabs.vfs.constant.AuthType;
 import com.nextlabs.vfs.constant.RepositoryType;
+import com.nextlabs.vfs.crawler.CrawlListener;
+import com.nextlabs.vfs.crawler.RepositoryCrawler;
 import com.nextlabs.vfs.dto.RepositoryCredentials;
 
 import static org.junit.Assert.*;
@@ -37,7 +38,8 @@ public class IntegrationTest {
 	
 	private static final int CRAWL_TEST_DEPTH_LIMIT = 10;
 	
-	private static final ExecutorService es = Executors.newFixedThreadPool(128);
+	// Virtual threads where available, so outstanding calls do not each hold a platform thread
+	private static final ExecutorService es = AsyncFileSystemManager.newDefaultExecutor();
 	
 	public static void main (String[] args) throws Exception {
 		fsMgr = new RepositoryFileSystemManager();
@@ -100,45 +102,41 @@ public class IntegrationTest {
 		es.shutdown();
 	}
 	
-	private static void crawlTest(String rootFolderURI, RepositoryCredentials sa, RepositoryType type) throws FileSystemException, InterruptedException, ExecutionException {
+	private static void crawlTest(String rootFolderURI, RepositoryCredentials sa, RepositoryType type) throws FileSystemException {
 		System.out.println("Crawling " + rootFolderURI);
-		@SuppressWarnings("unchecked")
-		Future<Void> testResult = (Future<Void>) es.submit(() -> {
+		fsMgr.resolveFile(rootFolderURI, sa, type);
+		try (RepositoryCrawler crawler = new RepositoryCrawler(fsMgr)) {
+			crawler.setMaxDepth(CRAWL_TEST_DEPTH_LIMIT);
+			Future<Long> testResult = es.submit(() -> crawler.crawl(rootFolderURI, new CrawlListener() {
+				@Override
+				public void onFile(FileObject file, FileType fileType, int depth) {
+					if (fileType == FileType.FILE) {
+						try {
+							file.getContent();
+						} catch (FileSystemException e) {
+							onError(file, e);
+							return;
+						}
+					}
+					System.out.println(file.toString() + "::" + fileType);
+				}
+
+				@Override
+				public void onError(FileObject file, Exception e) {
+					System.out.println(file.toString() + "::" + e.getMessage());
+				}
+			}));
 			try {
-				crawlTest(fsMgr.resolveFile(rootFolderURI, sa, type), CRAWL_TEST_DEPTH_LIMIT);
-			} catch (FileSystemException | InterruptedException | ExecutionException e) {
-				e.printStackTrace();
+				long found = testResult.get(600L, TimeUnit.SECONDS);
+				System.out.println("Successfully ran crawlTest on : " + rootFolderURI + " (" + found + " files and folders)");
+			} finally {
+				// Stops a crawl that ran out of time
+				testResult.cancel(true);
 			}
-		});
-		try {
-			testResult.get(600L, TimeUnit.SECONDS);
-			System.out.println("Successfully ran crawlTest on : " + rootFolderURI);
 		} catch (InterruptedException | ExecutionException | TimeoutException e) {
 			e.printStackTrace();
 			System.out.println("Crawl Test for: " + rootFolderURI + " FAILED!");
 		}
-		
-	}
-	
-	private static void crawlTest(FileObject f, int depthLimit) throws FileSystemException, InterruptedException, ExecutionException {
-		FileType type = await(f::getType, null);
-		StringBuffer buf = new StringBuffer();
-		buf.append(f.toString() + "::" + type);
-		if (type == FileType.FOLDER) {
-			System.out.println(buf.toString());
-			if (depthLimit > 0) {
-				for (FileObject child : await(f::getChildren, new FileObject[] {})) {
-					crawlTest(child, depthLimit -1);
-				}
-			}
-		} else if (type == FileType.FILE) {
-			FileContent content = await(f::getContent);
-			//Long modifiedTime = await(content::getLastModifiedTime, null);
-			//buf.append(" Last Modified: " +  modifiedTime);
-			System.out.println(buf.toString());
-		} else if (type == FileType.IMAGINARY) {
-			System.out.println(buf.toString());
-		}
 	}
 	
 	private static void fileIOTest(FileObject dir) throws IOException, InterruptedException {